@@ -0,0 +1,137 @@
+/**
+ *      BevelCache.java
+ *
+ *      Copyright 2010 - 2012 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created to keep the light and shadow hints out of PuzzleCanvas.buildTileImage's Area operations.
+ */
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the light and shadow hints (the bevel) drawn around the edge of each tile, one image per tile and rotation step.
+ * Working out the hints takes two Area subtractions on the tile outline, the most expensive part of building a tile image.
+ * With the cache, rebuilding a tile image after it has been rotated back to an earlier orientation only needs a blit.
+ * The least recently used images are dropped once the cache reaches its memory budget.
+ * This is safe to use from several threads at once.
+ */
+public class BevelCache
+{
+	//Tweak this to limit memory use
+	private static final long MAX_CACHE_BYTES = 64L*1024*1024;
+
+	private AffineTransform lightTransform;
+	private AffineTransform shadowTransform;
+	private Color lightColor;
+	private Color shadowColor;
+	private int cellSize;
+	private LinkedHashMap<Long,BufferedImage> bevels;
+
+	/**
+	 * @param cellSize width and height of a tile image, including margins
+	 * @param lightTransform offset of the light hint
+	 * @param lightColor color of the light hint
+	 * @param shadowTransform offset of the shadow hint
+	 * @param shadowColor color of the shadow hint
+	 */
+	public BevelCache(int cellSize, AffineTransform lightTransform, Color lightColor, AffineTransform shadowTransform, Color shadowColor)
+	{
+		this.cellSize=cellSize;
+		this.lightTransform=lightTransform;
+		this.lightColor=lightColor;
+		this.shadowTransform=shadowTransform;
+		this.shadowColor=shadowColor;
+		final int maxEntries=(int)Math.max(1,MAX_CACHE_BYTES/((long)cellSize*cellSize*4));
+		bevels=new LinkedHashMap<Long,BufferedImage>(16,0.75f,true)
+		{
+			protected boolean removeEldestEntry(Map.Entry<Long,BufferedImage> eldest)
+			{
+				return size()>maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Draws the light and shadow hints for a tile.
+	 * @param g2d graphics context, positioned at the upper left corner of the tile image
+	 * @param tileIndex tile index
+	 * @param rotationStep the tile's rotation step, or a negative value if rotated masks aren't repeatable - the hints are then drawn without caching
+	 * @param mask the tile's rotated mask, used if the hints aren't cached yet
+	 */
+	public void drawBevel(Graphics2D g2d, int tileIndex, int rotationStep, Shape mask)
+	{
+		if(rotationStep<0)
+		{
+			fillBevel(g2d,mask);
+		}
+		else
+		{
+			Long key=Long.valueOf(((long)tileIndex<<16)|rotationStep);
+			BufferedImage bevel;
+			synchronized(bevels)
+			{
+				bevel=bevels.get(key);
+			}
+			if(bevel==null)
+			{
+				//Built outside the lock so other threads aren't held up. Two threads may build the same image, either result will do.
+				bevel=new BufferedImage(cellSize,cellSize,BufferedImage.TYPE_INT_ARGB_PRE);
+				Graphics2D gBevel=bevel.createGraphics();
+				fillBevel(gBevel,mask);
+				gBevel.dispose();
+				synchronized(bevels)
+				{
+					bevels.put(key,bevel);
+				}
+			}
+			g2d.drawImage(bevel,0,0,null);
+		}
+	}
+
+	/**
+	 * Fills the light and shadow hints: everything outside a shifted copy of the mask.
+	 */
+	private void fillBevel(Graphics2D g2d, Shape mask)
+	{
+		Rectangle unMask = new Rectangle(0,0,cellSize,cellSize);
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		//light hints
+		Area area = new Area(unMask);
+		area.subtract(new Area(lightTransform.createTransformedShape(mask)));
+		g2d.setColor(lightColor);
+		g2d.fill(area);
+
+		//shadow hints
+		area = new Area(unMask);
+		area.subtract(new Area(shadowTransform.createTransformedShape(mask)));
+		g2d.setColor(shadowColor);
+		g2d.fill(area);
+	}
+}
@@ -20,6 +20,12 @@
 /**
  * Changelog:
  * 
+ * 2026 10 17 - Jon
+ *  - Groups are now tracked with union-find (path compression, union by size).
+ *    connect splices the member lists in constant time instead of merging them, and isConnected no longer walks the group.
+ *    Member lists are no longer kept sorted; save sorts them so the file format is unchanged.
+ *  - Removed removeConnectedElements and insertConnectedElements, z order is now handled by ZOrderManager.
+ * 
  * 2011 12 19 - Jon
  *  - Finished implementing save and load functions
  */
@@ -31,10 +37,17 @@ import hulka.util.ArrayReader;
 
 /**
  * Represents a set of elements that can be connected in groups.
+ * Groups are tracked with a union-find forest (path compression, union by size), so finding an element's group,
+ * checking whether two elements are connected, and connecting two groups take near constant time.
+ * The members of each group are also kept in a circular list for traversal with setGroup/getNext.
  */
 public class ConnectedSet
 {
+	//Next element in the group's circular member list
 	private int [] connectedIndex;
+	//Union-find parent links - a group's root is its own parent
+	private int [] parent;
+	//Group sizes, only valid for roots
 	private int [] connectedCount;
 	private int group;
 	private int nextValue;
@@ -43,6 +56,7 @@ public class ConnectedSet
 	public ConnectedSet(int size)
 	{
 		connectedIndex=new int[size];
+		parent=new int[size];
 		connectedCount=new int[size];
 		reset();
 	}
@@ -54,13 +68,34 @@ public class ConnectedSet
 		for(int i=0; i<connectedIndex.length; i++)
 		{
 			connectedIndex[i]=i;
+			parent[i]=i;
 			connectedCount[i]=1;
 		}
 	}
 	
+	/**
+	 * Returns the root element of a group. Two elements are connected if and only if they have the same root.
+	 * The root of a group may change when it is connected to another group.
+	 * @param index element index
+	 * @return index of the group's root element
+	 */
+	public int getRoot(int index)
+	{
+		int root=index;
+		while(parent[root]!=root)root=parent[root];
+		//Path compression - point everything along the way directly at the root
+		while(parent[index]!=root)
+		{
+			int next=parent[index];
+			parent[index]=root;
+			index=next;
+		}
+		return root;
+	}
+
 	public int getGroupSize(int index)
 	{
-		return connectedCount[index];
+		return connectedCount[getRoot(index)];
 	}
 	
 	/**
@@ -94,93 +129,65 @@ public class ConnectedSet
 	 */
 	public boolean isConnected(int index1,int index2)
 	{
-		boolean result=index1==index2;
-		for(int i=connectedIndex[index1];!result&&i!=index1;i=connectedIndex[i]) result=i==index2;
-		return result;
+		return getRoot(index1)==getRoot(index2);
 	}
 
 	/**
 	 * Connects two groups.
-	 * Does not work if the two elements already belong to the same group.
+	 * Nothing changes if the two elements already belong to the same group.
 	 * @param i element index
 	 * @param j element index
 	 * @return number of elements in the resulting group.
 	 */
 	public int connect(int i, int j)
 	{
-		int totalCount=connectedCount[i]+connectedCount[j];
-
-		//Find the bottom of both groups
-		for(;connectedIndex[i]>i;i=connectedIndex[i]);
-		for(;connectedIndex[j]>j;j=connectedIndex[j]);
-		
-		//Start at the top of both groups
-		i=connectedIndex[i];
-		j=connectedIndex[j];
-		
-		int top=-1;
-		if(i>j)
-		{
-			top=j;
-			j=connectedIndex[j];
-		}
-		else
-		{
-			top=i;
-			i=connectedIndex[i];
-		}
-		int pos=top;
-		int next=-1;
-
-		//Continue until the bottom of both lists are reached.
-		do
+		int rootI=getRoot(i);
+		int rootJ=getRoot(j);
+		if(rootI!=rootJ)
 		{
-			//The initial values and loop condition ensure that either i or j is valid.
-			if(j>pos && (i>j||i<=pos))
-			{
-				//j is downstream and less than i or i is upstream.
-				next=j;
-				j=connectedIndex[j];
-			}
-			else
+			//Union by size - hang the smaller tree off the larger one
+			if(connectedCount[rootI]<connectedCount[rootJ])
 			{
-				//j isn't valid, so i must be.
-				next=i;
-				i=connectedIndex[i];
+				int t=rootI;
+				rootI=rootJ;
+				rootJ=t;
 			}
-			connectedIndex[pos]=next;
-			connectedCount[pos]=totalCount;
-			pos=next;
-		}while(i>pos||j>pos);
-		
-		//Connect back to the top;
-		connectedIndex[pos]=top;
-		connectedCount[pos]=totalCount;
-		
-		return totalCount;
+			parent[rootJ]=rootI;
+			connectedCount[rootI]+=connectedCount[rootJ];
+
+			//Splice the member lists together - swapping the links of one element from each list joins the two cycles
+			int t=connectedIndex[i];
+			connectedIndex[i]=connectedIndex[j];
+			connectedIndex[j]=t;
+		}
+		return connectedCount[rootI];
 	}
 	
 	/**
 	 * Disconnects a single element from its group.
+	 * This walks the whole group.
 	 * @param i index of the element to disconnect.
 	 */
 	public void disconnect(int i)
 	{
-		if(connectedCount[i]>1)
+		if(getGroupSize(i)>1)
 		{
-			int newCount=connectedCount[i]-1;
+			int newCount=getGroupSize(i)-1;
 			int top=connectedIndex[i];
 
 			//Disconnect the element
 			connectedIndex[i]=i;
+			parent[i]=i;
 			connectedCount[i]=1;
 
-			//Adjust the count
+			//Make the element after it the new root - other members may have pointed at i
 			int next=top;
 			for(;connectedIndex[next]!=i;next=connectedIndex[next])
 			{
-				connectedCount[next]=newCount;
+				parent[next]=top;
 			}
+			parent[next]=top;
+			connectedCount[top]=newCount;
 
 			//Reconnect the broken link
 			connectedIndex[next]=top;
@@ -188,118 +195,35 @@ public class ConnectedSet
 	}
 
 	/**
-	 * Removes a group of connected elements from a sorted list.
-	 * The first n positions in the list will be marked with -1 (where n is the number of elements in the connected group) to indicate that those elements have been removed.
-	 * This is a fairly specialized function. It makes some assumptions:
-	 *  - The list is sorted by connected group size.
-	 *  - Unused positions appear at the beginning of the list, and set to -1.
-	 * The intention is to use this in conjunction with insertConnectedElements to remove two or more groups, connect them, and reinsert.
-	 * @param index an element of the group to insert.
-	 * @param sortedList list to insert the group into.
-	 * @return position of the first untouched element(list size if all elements were moved or removed), or -1 if the group could not be found (this should never happen).
-	 * Elements preceding the returned position have been moved or removed.
-	 */
-	public int removeConnectedElements(int index, int [] sortedList)
-	{
-		int position=-1;
-		int size=connectedCount[index];
-		int depth=0;
-		//Assuming size is not too big
-		if(size<connectedIndex.length)
-		{
-			//skip past empty positions
-			for(depth=0;depth<sortedList.length&&sortedList[depth]<0;depth++);
-			int cc=connectedCount[sortedList[depth]];
-			//skip past smaller connected groups
-			while(cc<size&&depth+size<connectedIndex.length)
-			{
-				depth+=cc;
-				cc=connectedCount[sortedList[depth]];
-			}
-		}
-		//look for the element
-		while(position<0&&connectedCount[sortedList[depth]]==size)
-		{
-			for(int i=0;i<size&&position<0;i++)
-			{
-				if(sortedList[i+depth]==index)
-				{
-					//found it, assume that this connected group is correctly positioned in sortedList
-					position=depth;
-				}
-			}
-			depth+=size;
-		}
-		if(position<0)
-		{
-			//This should never happen
-			throw new IndexOutOfBoundsException("Connected group for " + index + " was not located.");
-		}
-		else
-		{
-			//Move everything down
-			for(int i=depth-1; i>=size; i--)
-			{
-				sortedList[i]=sortedList[i-size];
-			}
-			//Clear the empty space
-			for(int i=0; i<size; i++)
-			{
-				sortedList[i]=-1;
-			}
-		}
-		return depth;
-	}
-
-	/**
-	 * Inserts a group of connected elements into a sorted list.
-	 * The inserted elements will always be inserted as a contiguous block in the list, in the same order they appear in the connected set.
-	 * This is a fairly specialized function. It makes some assumptions:
-	 *  - The list is sorted by connected group size.
-	 *  - The first n positions of the list are not used, where n is the number of elements to be inserted.
-	 *  - Unused positions in the list are set to -1.
-	 * The intention is to use this in conjunction with removeConnectedElements to remove two or more groups, connect them, and reinsert.
-	 * @param index an element of the group to insert.
-	 * @param sortedList list to insert the group into.
-	 * @return position of the first inserted element in sortedList.
+	 * Saves the set in its original format: each group as a circular list in ascending order, with every element holding the group size.
 	 */
-	public int insertConnectedElements(int index, int [] sortedList)
+	public boolean save(PrintWriter out, PrintWriter err)
 	{
-		int size=connectedCount[index];
-		int depth=0;
-		//Skip past empty positions
-		for(depth=size;depth<sortedList.length&&sortedList[depth]<0;depth++);
-		//bump smaller sets up to make space
-		int cc=0;
-		if(depth<sortedList.length)cc=connectedCount[sortedList[depth]];
-		while(cc<size&&depth<sortedList.length)
+		int size=connectedIndex.length;
+		int [] sortedIndex=new int[size];
+		int [] counts=new int[size];
+		//first and last hold the smallest and largest element seen so far for each root
+		int [] first=new int[size];
+		int [] last=new int[size];
+		for(int i=0; i<size; i++) first[i]=-1;
+		for(int i=0; i<size; i++)
 		{
-			for(int j=0; j<cc; j++)
-			{
-				sortedList[depth+j-size]=sortedList[depth+j];
-			}
-			depth+=cc;
-			if(depth<sortedList.length)cc=connectedCount[sortedList[depth]];
+			int root=getRoot(i);
+			if(first[root]<0) first[root]=i;
+			else sortedIndex[last[root]]=i;
+			last[root]=i;
+			counts[i]=connectedCount[root];
 		}
-
-		//Move the current set into the hole left by shifting smaller sets
-		int i = index;
-		for(int j=0; j<size; j++)
+		//Connect back to the top
+		for(int i=0; i<size; i++)
 		{
-			sortedList[depth+j-size]=i;
-			i = connectedIndex[i];
+			if(first[i]>=0) sortedIndex[last[i]]=first[i];
 		}
-		
-		return depth-size;
-	}
-	
-	public boolean save(PrintWriter out, PrintWriter err)
-	{
 		int [][] values=new int[2][];
-		values[0]=connectedIndex;
-		values[1]=connectedCount;
+		values[0]=sortedIndex;
+		values[1]=counts;
 		String [] names={"connectedIndex","connectedCount"};
-		return new ArrayWriter(2,connectedIndex.length,"ConnectedSet").save(values,names,out,err);
+		return new ArrayWriter(2,size,"ConnectedSet").save(values,names,out,err);
 	}
 	
 	public static ConnectedSet load(BufferedReader in, PrintWriter err)
@@ -316,10 +240,29 @@ public class ConnectedSet
 			if(cI!=null && cC!=null)
 			{
 				result=new ConnectedSet();
-				result.connectedCount=cC;
 				result.connectedIndex=cI;
+				result.parent=new int[cI.length];
+				result.connectedCount=new int[cI.length];
 				result.group=-1;
 				result.nextValue=-1;
+				//Rebuild the forest - the first element found in each circular list becomes the root
+				boolean [] visited=new boolean[cI.length];
+				for(int i=0; i<cI.length; i++)
+				{
+					if(!visited[i])
+					{
+						int count=0;
+						int j=i;
+						do
+						{
+							visited[j]=true;
+							result.parent[j]=i;
+							count++;
+							j=cI[j];
+						}while(j!=i && !visited[j]);
+						result.connectedCount[i]=count;
+					}
+				}
 			}
 		}
 		return result;
@@ -0,0 +1,160 @@
+/**
+ *      GroupSpriteCache.java
+ *
+ *      Copyright 2010 - 2012 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created so that large connected groups can be drawn with a single drawImage.
+ */
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Keeps a composite image (a sprite) of each large connected group, so dragging or redrawing the group is a single blit
+ * instead of one per tile.
+ * Sprites are stored by group root and positioned relative to the root tile, so they move with the group for free.
+ * A sprite is out of date once the group's layout revision changes (see TilePositions.getRevision): when a tile in the group
+ * is moved on its own, as after a rotation, or the group is connected to another one.
+ * The cache doesn't draw sprites itself - createSprite hands back an empty image for the caller to draw the group onto.
+ */
+public class GroupSpriteCache
+{
+	//Tweak this: smaller groups are drawn tile by tile
+	public static final int MIN_GROUP_SIZE = 32;
+	//Tweak this to limit memory use
+	private static final long MAX_CACHE_BYTES = 64L*1024*1024;
+
+	private ConnectedSet tileSet;
+	private TilePositions positions;
+	//Sprites, their layout revisions, and their offsets from the root tile, indexed by root
+	private BufferedImage [] sprites;
+	private int [] revisions;
+	private int [] offsetX;
+	private int [] offsetY;
+	private long cacheBytes=0;
+
+	/**
+	 * @param tileSet the connected set defining the groups - the same one positions uses
+	 * @param positions tile positions
+	 * @param tileCount number of tiles
+	 */
+	public GroupSpriteCache(ConnectedSet tileSet, TilePositions positions, int tileCount)
+	{
+		this.tileSet=tileSet;
+		this.positions=positions;
+		sprites=new BufferedImage[tileCount];
+		revisions=new int[tileCount];
+		offsetX=new int[tileCount];
+		offsetY=new int[tileCount];
+	}
+
+	/**
+	 * Checks whether a group is large enough to be worth a sprite.
+	 * @param tileIndex any tile in the group
+	 */
+	public boolean isCacheable(int tileIndex)
+	{
+		return tileSet.getGroupSize(tileIndex)>=MIN_GROUP_SIZE;
+	}
+
+	/**
+	 * Returns a group's sprite, if it is cached and up to date.
+	 * @param tileIndex any tile in the group
+	 * @param bounds receives the sprite's position and size on the board
+	 * @return the sprite, or null
+	 */
+	public BufferedImage getSprite(int tileIndex, Rectangle bounds)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		BufferedImage sprite=sprites[root];
+		if(sprite!=null)
+		{
+			if(revisions[root]==positions.getRevision(root))
+			{
+				bounds.setBounds(positions.getX(root)+offsetX[root],positions.getY(root)+offsetY[root],sprite.getWidth(),sprite.getHeight());
+			}
+			else
+			{
+				release(root);
+				sprite=null;
+			}
+		}
+		return sprite;
+	}
+
+	/**
+	 * Creates an empty sprite for a group, replacing any it had. The caller draws the group onto it.
+	 * @param tileIndex any tile in the group
+	 * @param bounds the sprite's position and size on the board
+	 * @return the sprite, or null if it doesn't fit in the memory budget
+	 */
+	public BufferedImage createSprite(int tileIndex, Rectangle bounds)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		release(root);
+		long bytes=getBytes(bounds.width,bounds.height);
+		if(cacheBytes+bytes>MAX_CACHE_BYTES)releaseStale();
+		BufferedImage sprite=null;
+		if(bounds.width>0 && bounds.height>0 && cacheBytes+bytes<=MAX_CACHE_BYTES)
+		{
+			sprite=new BufferedImage(bounds.width,bounds.height,BufferedImage.TYPE_INT_ARGB_PRE);
+			sprites[root]=sprite;
+			revisions[root]=positions.getRevision(root);
+			offsetX[root]=bounds.x-positions.getX(root);
+			offsetY[root]=bounds.y-positions.getY(root);
+			cacheBytes+=bytes;
+		}
+		return sprite;
+	}
+
+	/**
+	 * Drops every sprite.
+	 */
+	public void clear()
+	{
+		for(int i=0; i<sprites.length; i++)release(i);
+	}
+
+	/**
+	 * Drops sprites that can't be used again: those of groups that have been connected to another group, or have changed.
+	 */
+	private void releaseStale()
+	{
+		for(int i=0; i<sprites.length; i++)
+		{
+			if(sprites[i]!=null && (tileSet.getRoot(i)!=i || revisions[i]!=positions.getRevision(i)))release(i);
+		}
+	}
+
+	private void release(int root)
+	{
+		if(sprites[root]!=null)
+		{
+			cacheBytes-=getBytes(sprites[root].getWidth(),sprites[root].getHeight());
+			sprites[root]=null;
+		}
+	}
+
+	private static long getBytes(int width, int height)
+	{
+		return (long)width*height*4;
+	}
+}
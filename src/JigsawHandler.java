@@ -18,6 +18,37 @@
 /**
  * Changelog:
  * 
+ * 2026 10 17 - Jon
+ *  - boardManager now uses a GridShapeIndex (O(1) add and remove), useGridIndex switches back to the row/column index for comparison.
+ *  - mouseReleased snap loop and draw use the allocation-free getIntersectingShapes(Rectangle,int[]) query.
+ *  - Tile bounds are read through MouseSensetiveTile.getBounds(Rectangle), which uses the tile's cached shape.
+ *  - Z order is kept per connected group by ZOrderManager. Picking up or dropping a group no longer shifts zIndices or renumbers other tiles;
+ *    zIndices is now generated from ZOrderManager for redrawing and saving.
+ *  - mouseReleased snap detection checks each dragged tile's real neighbors (TileManager.getNeighbors) that are on the board,
+ *    instead of querying the board for intersecting tiles. Other sets are snapped to the largest matching set.
+ *  - Tile positions are kept by TilePositions, relative to each connected group, so dragging or snapping a group is a single update.
+ *  - Connected group bounds and drag allowances are cached by TilePositions and move with the group.
+ *  - boardManager hit tests through a PickBuffer covering the board, usePickBuffer switches back to containsPoint checks.
+ *    Layers share one pick buffer, handed to the current layer's manager by setLayer.
+ *  - Tile images are built on worker threads when the game is connected (PuzzleCanvas.buildTileImages); play starts when they are done.
+ *  - Tile images are built with their rotation step so PuzzleCanvas can reuse cached light and shadow hints.
+ *  - Tile images are listed for building with visible tiles first, since PuzzleCanvas may not be able to keep them all.
+ *  - Tile images are cached per rotation step; after a keyboard rotation the next step each way is built in the background.
+ *  - Large connected groups are drawn from a cached sprite (GroupSpriteCache) by drawDragBuffer, draw and redraw,
+ *    so dragging, redrawing or finishing with a big group is one drawImage. Sprites are rebuilt after a merge or rotation.
+ *  - The drag buffer is shown through PuzzleCanvas.showDragBuffer, and changed areas are marked with addDirtyRegion instead of
+ *    being cleared, drawn and repainted straight away. The canvas merges the areas and rebuilds each one once per flush.
+ *  - Each layer keeps its own background raster in PuzzleCanvas; setLayer only redraws a layer if its raster is out of date.
+ *  - Each layer has its own MouseSensetiveShapeManager (layerManagers), so hidden layers stay indexed and queries only see the current layer.
+ *    boardManager is the current layer's manager. setLayer moves only the selected tiles between managers.
+ *  - Drag rendering is paced by a FramePacer: mouseDragged only records the pointer position, and the drag is rendered at most once per frame.
+ *    getDragPacer gives access to its counts of coalesced events and dropped frames.
+ *  - Connected groups are added to and removed from boardManager with one addShapes or removeShapes call.
+ *  - Tile events only carry the topmost tile (MouseSensetiveShapeManager.setTopmostOnly), which is all mousePressed uses.
+ *    Each layer has its own manager, so no layer filter is needed.
+ *  - Per-tile z order and layer (formerly layerIndices) are kept in primitive arrays by TileStore, along with each tile's cached
+ *    mask bounds and outline. MouseSensetiveTile is a view onto the store. Drawing, rotation, realignment and saving read the store.
+ * 
  * 2012 02 23 - Jon
  *  - Modified the scaling code in the load function:
  *    - It was previously scaling based on screen size which caused problems when the aspect ratio changed.
@@ -108,6 +139,8 @@ import java.awt.Shape;
 import java.awt.geom.Area;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import hulka.gui.FramePacer;
 import hulka.event.*;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
@@ -141,17 +174,36 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	//For placement, margin not included
 	int tileHeight,tileWidth,tileSpacingX,tileSpacingY;
 	
-	//Event handling
+	//Event handling - one manager per layer, boardManager is the current layer's
+	private MouseSensetiveShapeManager [] layerManagers;
 	private MouseSensetiveShapeManager boardManager;
+	//Set this to false to benchmark against the original row/column shape index
+	private static boolean useGridIndex=true;
+	//Set this to false to hit test tiles with containsPoint instead of the pick buffer
+	private static boolean usePickBuffer=true;
+	private PickBuffer pickBuffer=null;
+	//Renders drags at most once per frame, however fast the mouse sends events
+	private FramePacer dragPacer=new FramePacer(new Runnable()
+	{
+		public void run(){renderDrag();}
+	});
 	private MouseSensetiveTile [] tiles;
 
 	//z-ordering
+	//Z order of the connected groups on the board
+	private ZOrderManager zOrder;
+	//Tile indices in z order, top first - filled from zOrder for redrawing and saving
 	private int [] zIndices;
 	//
 	private ConnectedSet connectedTiles;
 	private ConnectedSet selectedTiles;
+	//Tile positions, relative to their connected group in connectedTiles
+	private TilePositions positions;
+	//Composite images of large connected groups
+	private GroupSpriteCache groupSprites;
+	//Per-tile state - z order, layer, and cached mask bounds and outlines. tiles holds its views.
+	private TileStore store;
 	
-	private int [] layerIndices;
 	private int layerCount=3;
 	private int currentLayer=0;
 	
@@ -159,6 +211,10 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	public boolean isGameComplete(){return gameComplete;}
 	private boolean gameSaved=false;
 	public boolean isGameSaved(){return gameSaved;}
+	/**
+	 * Returns the pacer that renders drags, for reading its event and frame counts. Counts add up over all drags until reset.
+	 */
+	public FramePacer getDragPacer(){return dragPacer;}
 
 	private Rectangle boardBounds=null;
 	
@@ -178,6 +234,8 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	
 	//for multi-select
 	private int selectedGroup=-1;
+	//Set once the mouse listeners are registered (see startPlay)
+	private boolean playing=false;
 
 	public JigsawHandler(TileManager tileManager)
 	{
@@ -191,7 +249,15 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		tileSpacingY = tileManager.getTileSpacingY();
 		tileSize = (tileHeight>tileWidth ? tileHeight : tileWidth) + tileMargin*2;
 
-		boardManager = new MouseSensetiveShapeManager();
+		//Grid cells are sized to fit a tile, so each tile touches at most four cells
+		layerManagers = new MouseSensetiveShapeManager[layerCount];
+		for(int i=0; i<layerCount; i++)
+		{
+			layerManagers[i] = new MouseSensetiveShapeManager(useGridIndex ? new GridShapeIndex(tileSize) : new RowColumnShapeIndex());
+			//mousePressed only looks at the top tile - there is no need to test the ones underneath
+			layerManagers[i].setTopmostOnly(true);
+		}
+		boardManager = layerManagers[currentLayer];
 	}
 	
 	public void connect(PuzzleCanvas canvas)
@@ -212,16 +278,65 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		{
 			setupTiles();
 		}
-		ui.setBuffers(tileManager.getTileCount(),tileSize,errMargin);
+		ui.setBuffers(tileManager.getTileCount(),tileSize,errMargin,tileManager.getRotationSteps());
+		groupSprites=new GroupSpriteCache(connectedTiles,positions,tiles.length);
+		ui.setLayerCount(layerCount);
+		ui.setLayer(currentLayer);
+		//One pick buffer, used by the current layer's manager - setLayer hands it over
+		if(usePickBuffer)
+		{
+			pickBuffer=new PickBuffer(boardBounds.width,boardBounds.height);
+			boardManager.setPickBuffer(pickBuffer);
+		}
 		AffineTransform trans=AffineTransform.getTranslateInstance(tileMargin,tileMargin);
+		int [] buildIndices=new int[tiles.length];
+		int [] buildX=new int[tiles.length];
+		int [] buildY=new int[tiles.length];
+		AffineTransform [] buildRotations=new AffineTransform[tiles.length];
+		int [] buildSteps=new int[tiles.length];
+		int buildCount=0;
 		for(int i=0; i<tiles.length; i++)
 		{
 			ui.setTileMask(i,trans.createTransformedShape(tileManager.getTileMask(i)));
-			initTileImage(i);
-			if(layerIndices[i]==currentLayer)boardManager.addShape(tiles[i]);
+			layerManagers[store.getLayer(i)].addShape(tiles[i]);
 		}
+		//Tiles on the current layer first, top first - if the tile image cache can't hold them all, these are the ones drawn first
+		//Then any other tiles, and tiles that aren't on the board
+		zIndices=zOrder.getZIndices(connectedTiles,zIndices);
+		boolean [] listed=new boolean[tiles.length];
+		for(int pass=0; pass<3; pass++)
+		{
+			for(int z=0; z<zIndices.length; z++)
+			{
+				int i=pass<2 ? zIndices[z] : z;
+				if(i>=0 && !listed[i] && (pass==2 || (store.getLayer(i)==currentLayer)==(pass==0)) && tileManager.getOriginalTilePosition(i, itiPos)!=null)
+				{
+					listed[i]=true;
+					buildIndices[buildCount]=i;
+					//GUI takes into account the errMargin, but adjustment must be made for tileMargin
+					buildX[buildCount]=itiPos.x - tileMargin;
+					buildY[buildCount]=itiPos.y - tileMargin;
+					buildRotations[buildCount]=tileManager.getRotationTransform(i,new AffineTransform(),errMargin + tileMargin);
+					buildSteps[buildCount]=tileManager.getRotationCount(i);
+					buildCount++;
+				}
+			}
+		}
+		//The tile images are built in the background - the game starts once they are done
+		ui.buildTileImages(buildIndices,buildX,buildY,buildRotations,buildSteps,buildCount,new Runnable()
+		{
+			public void run(){startPlay();}
+		});
+	}
+
+	/**
+	 * Shows the board and starts listening for input. Called once the tile images are built.
+	 */
+	private void startPlay()
+	{
 		redraw();
-		boardManager.addEventListener(this);
+		for(int i=0; i<layerCount; i++)layerManagers[i].addEventListener(this);
+		playing=true;
 		ui.addMouseListener(boardManager);
 		ui.addMouseListener(this);
 		ui.addMouseMotionListener(this);
@@ -230,6 +345,8 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	
 	public void disconnect()
 	{
+		dragPacer.stop();
+		playing=false;
 		ui.removeMouseListener(this);
 		ui.removeMouseListener(boardManager);
 		ui.removeMouseMotionListener(this);
@@ -237,12 +354,18 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		ui.clearBuffers();
 	}
 	
+	/**
+	 * Switches to another layer. Tiles on the other layers stay registered with their own layer's manager,
+	 * so only the selected or dragged tiles have to move.
+	 */
 	public void setLayer(int layer)
 	{
 		if(layer>=0&&layer<layerCount)
 		{
 			int sg=dragIndex>=0?dragIndex:selectedGroup>=0?selectedGroup:-1;
-			//Mark selected or dragging tiles to be ignored for the moment
+			MouseSensetiveShapeManager newManager=layerManagers[layer];
+			//Move selected or dragging tiles to the new layer
+			//Selected tiles are registered for mouse events, so they are transferred to the new layer's manager - dragged tiles aren't registered
 			if(sg>=0)
 			{
 				selectedTiles.setGroup(sg);
@@ -250,63 +373,80 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 				{
 					connectedTiles.setGroup(i);
 					for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
-						layerIndices[j]=-1;
+					{
+						if(boardManager.containsShape(tiles[j]))
+						{
+							boardManager.removeShape(tiles[j]);
+							newManager.addShape(tiles[j]);
+						}
+						store.setLayer(j,layer);
+					}
 				}
 				//Don't process the click event for tile rotation
 				ignoreClick=dragIndex>=0;
 			}
 
-			//remove old current layer tiles from the event manager
-			for(int i=0;i<tiles.length;i++)
+			//Hand mouse events to the new layer's manager
+			if(newManager!=boardManager && playing)
 			{
-				if(layerIndices[i]==currentLayer)boardManager.removeShape(tiles[i]);
+				//The manager's events must arrive before this handler's - see mousePressed
+				if(!gameComplete)ui.removeMouseListener(this);
+				ui.removeMouseListener(boardManager);
+				ui.addMouseListener(newManager);
+				if(!gameComplete)ui.addMouseListener(this);
 			}
-
-			currentLayer=layer;
-			
-			//insert new current layer tiles into the event manager
-			for(int i=0;i<tiles.length;i++)
+			if(newManager!=boardManager && pickBuffer!=null)
 			{
-				if(layerIndices[i]==currentLayer)boardManager.addShape(tiles[i]);
+				boardManager.setPickBuffer(null);
+				newManager.setPickBuffer(pickBuffer);
 			}
-			
-			//Move selected or dragging tiles to the current layer
-			if(sg>=0)
+			boardManager=newManager;
+			currentLayer=layer;
+			//Switching to a layer that is still drawn is a single blit
+			if(ui.setLayer(currentLayer))
 			{
-				selectedTiles.setGroup(sg);
-				for(int i=selectedTiles.getNext();i>=0;i=selectedTiles.getNext())
-				{
-					connectedTiles.setGroup(i);
-					for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
-						layerIndices[j]=currentLayer;
-				}
+				if(sg>=0)ui.showDragBuffer(dragBounds);
+				ui.addDirtyRegion(boardBounds);
 			}
-			redraw();
+			else redraw();
 		}
 	}
 	
 	private Rectangle rdBounds=null;
+	private Rectangle rdBounds2=new Rectangle();
 	public void redraw()
 	{
 		ui.erase();
 
 		//Redraw the background
 		if(rdBounds==null)rdBounds=new Rectangle(0,0,tileSize+errMargin*2,tileSize+errMargin*2);
+		zIndices=zOrder.getZIndices(connectedTiles,zIndices);
+		//A group's tiles are listed together, so a sprite is drawn in place of the group's first tile and the rest are skipped
+		int spriteRoot=-1;
 		for(int i = zIndices.length - 1; i >= 0; i--)
 		{
-			if(zIndices[i]>=0 && layerIndices[zIndices[i]]==currentLayer)
+			if(zIndices[i]>=0 && store.getLayer(zIndices[i])==currentLayer && connectedTiles.getRoot(zIndices[i])!=spriteRoot)
 			{
-				ui.setTileIndex(zIndices[i]);
-				rdBounds.x=tiles[zIndices[i]].getX()-errMargin;rdBounds.y=tiles[zIndices[i]].getY()-errMargin;
-				ui.drawTile(rdBounds,null,PuzzleCanvas.DRAW_TILEBUFFER,PuzzleCanvas.DRAW_BACKGROUND);
+				BufferedImage sprite=getGroupSprite(zIndices[i],rdBounds2);
+				if(sprite!=null)
+				{
+					spriteRoot=connectedTiles.getRoot(zIndices[i]);
+					ui.drawSprite(sprite,rdBounds2.x,rdBounds2.y,null,PuzzleCanvas.DRAW_BACKGROUND);
+				}
+				else
+				{
+					ui.setTileIndex(zIndices[i]);
+					rdBounds.x=tiles[zIndices[i]].getX()-errMargin;rdBounds.y=tiles[zIndices[i]].getY()-errMargin;
+					ui.drawTile(rdBounds,null,PuzzleCanvas.DRAW_TILEBUFFER,PuzzleCanvas.DRAW_BACKGROUND);
+				}
 			}
 		}
-		ui.clear();
 		
 		//Redraw the selection
-		if(dragIndex>=0||selectedGroup>=0)ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
+		if(dragIndex>=0||selectedGroup>=0)ui.showDragBuffer(dragBounds);
+		else ui.hideDragBuffer();
 
-		ui.repaint();
+		ui.addDirtyRegion(boardBounds);
 	}
 
 	private void setupTiles()
@@ -314,15 +454,14 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		//Connected sets and index arrays are handled differently for loaded games vs new games - this is for new games
 		connectedTiles=new ConnectedSet(tiles.length);
 		selectedTiles=new ConnectedSet(tiles.length);
+		positions=new TilePositions(connectedTiles,tiles.length);
+		//All tiles start on layer 0
+		store=new TileStore(tileManager,positions,errMargin);
 		zIndices = new int[tiles.length];
-		layerIndices=new int[tiles.length];
 
 		int rotationSteps  = tileManager.getRotationSteps();
-		//initialize layers
 		for(int i=0; i < zIndices.length; i++)
 		{
-			//All tiles to layer 0
-			layerIndices[i]=0;
 			zIndices[i] = i;
 		}
 	
@@ -342,8 +481,12 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			int x = random.nextInt(w);
 			int y = random.nextInt(h);
 			tileManager.rotate(zIndices[i],TileManager.SPIN_CW*random.nextInt(rotationSteps));
-			tiles[zIndices[i]] = new MouseSensetiveTile(tileManager, zIndices[i], x, y,i,errMargin);
+			store.moveTile(zIndices[i],x,y);
+			store.setZOrder(zIndices[i],i);
+			tiles[zIndices[i]] = store.getTile(zIndices[i]);
 		}
+		zOrder=new ZOrderManager(tiles.length);
+		zOrder.load(zIndices,connectedTiles,store);
 	}
 	
 	private Point itiPos=new Point();
@@ -353,6 +496,37 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())initTileImage(i);
 	}
 
+	private int [] brvIndices=null;
+	private int [] brvSteps=null;
+	/**
+	 * Has the images for the next rotation step in each direction built in the background, so rotating the tiles again doesn't stall.
+	 */
+	private void buildRotationVariants(int tileIndex, ConnectedSet tileSet)
+	{
+		int rotationSteps=tileManager.getRotationSteps();
+		if(rotationSteps<2)return;
+		if(brvIndices==null)
+		{
+			brvIndices=new int[tiles.length*2];
+			brvSteps=new int[tiles.length*2];
+		}
+		int count=0;
+		tileSet.setGroup(tileIndex);
+		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
+		{
+			ui.setTileIndex(i);
+			for(int direction=TileManager.SPIN_CCW; direction<=TileManager.SPIN_CW; direction+=2)
+			{
+				int step=(tileManager.getRotationCount(i)+direction+rotationSteps)%rotationSteps;
+				ui.setRotationVariant(step,tileManager.getRotationTransform(i,step,new AffineTransform(),errMargin + tileMargin));
+				brvIndices[count]=i;
+				brvSteps[count]=step;
+				count++;
+			}
+		}
+		ui.buildRotationVariants(brvIndices,brvSteps,count);
+	}
+
 	/**
 	 * This should only be called at setup and after a tile has been rotated.
 	 */
@@ -363,7 +537,7 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		{
 			ui.setTileIndex(tileIndex);
 			//GUI takes into account the errMargin, but adjustment must be made for tileMargin
-			ui.buildTileImage(itiPos.x - tileMargin,itiPos.y - tileMargin,rotation);
+			ui.buildTileImage(itiPos.x - tileMargin,itiPos.y - tileMargin,rotation,tileManager.getRotationCount(tileIndex));
 		}
 	}
 	
@@ -374,21 +548,25 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	 */
 	private void dropConnectedTiles(int tileIndex,ConnectedSet tileSet)
 	{
-		int tileCount=tileSet.getGroupSize(tileIndex);
-		//Add connected tiles to z-indices (they will be placed underneath smaller sets)
-		int offset=tileSet.insertConnectedElements(tileIndex,zIndices);
-		//Adjust z-indices for affected tiles
-		for(int i=0;i<tileCount+offset;i++)
-		{
-			if(zIndices[i]>=0) tiles[zIndices[i]].setZOrder(i);
-		}
+		//Set the group's z order (it will be placed underneath smaller sets)
+		zOrder.insertGroup(tileIndex,tileSet,store);
 
 		//insert the connected tiles into boardManager (mouse events).
+		boardManager.addShapes(groupShapes,listGroup(tileIndex,tileSet));
+	}
+
+	private MouseSensetiveShape [] groupShapes=null;
+	/**
+	 * Lists a connected group's tiles in groupShapes, for boardManager.addShapes and removeShapes.
+	 * @return the number of tiles listed
+	 */
+	private int listGroup(int tileIndex,ConnectedSet tileSet)
+	{
+		if(groupShapes==null)groupShapes=new MouseSensetiveShape[tiles.length];
+		int count=0;
 		tileSet.setGroup(tileIndex);
-		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
-		{
-			boardManager.addShape(tiles[i]);
-		}
+		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())groupShapes[count++]=tiles[i];
+		return count;
 	}
 
 	private void copyRect(Rectangle in,Rectangle out){out.x=in.x;out.width=in.width;out.y=in.y;out.height=in.height;}
@@ -396,6 +574,7 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	private Rectangle gdaBottom=new Rectangle();
 	private Rectangle gdaLeft=new Rectangle();
 	private Rectangle gdaRight=new Rectangle();
+	private Rectangle gdaTile=new Rectangle();
 	//Adjust as necessary. Currently one third total width or height.
 	private int gdaEdgeFactor=3;
 	/**
@@ -409,6 +588,20 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	 * @return bounding box of the connected set.
 	 */
 	private Rectangle getDragAllowance(int tileIndex,ConnectedSet tileSet,Rectangle bounds,Rectangle result)
+	{
+		//The allowance only changes when the group changes shape, it is cached with the group's position
+		if(positions.getDragAllowance(tileIndex,result)==null)
+		{
+			result=buildDragAllowance(tileIndex,tileSet,bounds,result);
+			positions.setDragAllowance(tileIndex,result);
+		}
+		return result;
+	}
+
+	/**
+	 * Works out the drag allowance for getDragAllowance by checking each tile in the set.
+	 */
+	private Rectangle buildDragAllowance(int tileIndex,ConnectedSet tileSet,Rectangle bounds,Rectangle result)
 	{
 		//Adjust as necessary. Currently one half tile width or height.
 		int hAllowance=tileWidth/2;
@@ -443,7 +636,7 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		int rb=lb;
 		for(int i=tileSet.getNext();i>=0;i=tileSet.getNext())
 		{
-			Rectangle r = tiles[i].getBounds();
+			Rectangle r = store.getBounds(i,gdaTile);
 
 			//Figure out the allowance for this tile
 			int left=r.x+r.width-hAllowance;
@@ -502,45 +695,47 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	private Rectangle pickConnectedTiles(int tileIndex,ConnectedSet tileSet,Rectangle result)
 	{
 		boolean resultInitialized=false;
-		int groupSize=tileSet.getGroupSize(tileIndex);
 
 		result=getConnectedBounds(tileIndex,tileSet,result);
 		//remove the connected tiles from the boardManager (mouse events)
-		tileSet.setGroup(tileIndex);
-		for(int i=tileSet.getNext();i>=0;i=tileSet.getNext())
-		{
-			boardManager.removeShape(tiles[i]);
-		}
+		boardManager.removeShapes(groupShapes,listGroup(tileIndex,tileSet));
 		
-		//remove the connected tiles from the z-indices (they will be moved to the beginning of the list)
-		int endIndex=tileSet.removeConnectedElements(tileIndex,zIndices);
-		//Adjust z-indices for tiles still on the board
-		for(int i=groupSize;i<endIndex;i++)
-		{
-			if(zIndices[i]>=0) tiles[zIndices[i]].setZOrder(i);
-		}
+		//remove the connected tiles from the z order (tiles still on the board are not affected)
+		zOrder.removeGroup(tileIndex,tileSet,store);
 
 		return result;
 	}
 	
 	Rectangle dBounds=null;
+	private Rectangle dBounds2=new Rectangle();
+	private int [] dIntersecting=null;
 	/**
 	 * Draws tiles within the given region
 	 * @param bounds the region to redraw
 	 */
 	private void draw(Rectangle bounds)
 	{
-		MouseSensetiveShape [] intersectingTiles = boardManager.getIntersectingShapes(bounds);
+		if(dIntersecting==null)dIntersecting=new int[tiles.length];
+		//Bounding boxes are close enough here, drawing is clipped to bounds anyway
+		int intersectingCount = boardManager.getIntersectingShapes(bounds,dIntersecting);
 		if(dBounds==null)dBounds=new Rectangle(0,0,tileSize+errMargin*2,tileSize+errMargin*2);
-		if(intersectingTiles != null)
+		//Tiles are sorted by z order, which keeps each group's tiles together - see redraw
+		int spriteRoot=-1;
+		for(int j = intersectingCount - 1; j >= 0; j--)
 		{
-			for(int j = intersectingTiles.length - 1; j >= 0; j--)
+			int tileIndex=dIntersecting[j];
+			if(store.getLayer(tileIndex)==currentLayer && connectedTiles.getRoot(tileIndex)!=spriteRoot)
 			{
-				int tileIndex=intersectingTiles[j].getIndex();
-				if(layerIndices[tileIndex]==currentLayer)
+				BufferedImage sprite=getGroupSprite(tileIndex,dBounds2);
+				if(sprite!=null)
+				{
+					spriteRoot=connectedTiles.getRoot(tileIndex);
+					ui.drawSprite(sprite,dBounds2.x,dBounds2.y,bounds,PuzzleCanvas.DRAW_BACKGROUND);
+				}
+				else
 				{
 					ui.setTileIndex(tileIndex);
-					dBounds.x=intersectingTiles[j].getX()-errMargin;dBounds.y=intersectingTiles[j].getY()-errMargin;
+					dBounds.x=store.getX(tileIndex)-errMargin;dBounds.y=store.getY(tileIndex)-errMargin;
 					ui.drawTile(dBounds,bounds,PuzzleCanvas.DRAW_TILEBUFFER, PuzzleCanvas.DRAW_BACKGROUND);
 				}
 			}
@@ -548,19 +743,68 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	}
 
 	private Rectangle ddbBounds=null;
+	private Rectangle ddbBounds2=new Rectangle();
 	private void drawDragBuffer(Rectangle bounds,int tileIndex,ConnectedSet tileSet, boolean selected)
 	{
 		if(ddbBounds==null)ddbBounds=new Rectangle(0,0,tileSize+errMargin*2,tileSize+errMargin*2);
-		tileSet.setGroup(tileIndex);
-		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
+		BufferedImage sprite=tileSet==connectedTiles ? getGroupSprite(tileIndex,ddbBounds2) : null;
+		if(sprite!=null)ui.drawSprite(sprite,ddbBounds2.x-bounds.x,ddbBounds2.y-bounds.y,null,PuzzleCanvas.DRAW_DRAGBUFFER);
+		if(sprite==null || selected)
 		{
-			ui.setTileIndex(i);
-			ddbBounds.x=tiles[i].getX()-bounds.x-errMargin;ddbBounds.y=tiles[i].getY()-bounds.y-errMargin;
-			ui.drawTile(ddbBounds,null,PuzzleCanvas.DRAW_TILEBUFFER,PuzzleCanvas.DRAW_DRAGBUFFER);
-			if(selected)ui.drawSelected(ddbBounds.x,ddbBounds.y,PuzzleCanvas.DRAW_DRAGBUFFER);
+			tileSet.setGroup(tileIndex);
+			for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
+			{
+				ui.setTileIndex(i);
+				ddbBounds.x=store.getX(i)-bounds.x-errMargin;ddbBounds.y=store.getY(i)-bounds.y-errMargin;
+				if(sprite==null)ui.drawTile(ddbBounds,null,PuzzleCanvas.DRAW_TILEBUFFER,PuzzleCanvas.DRAW_DRAGBUFFER);
+				if(selected)ui.drawSelected(ddbBounds.x,ddbBounds.y,PuzzleCanvas.DRAW_DRAGBUFFER);
+			}
 		}
 	}
 
+	private int [] gsIndices=null;
+	private int [] gsX=null;
+	private int [] gsY=null;
+	/**
+	 * Returns the sprite for a large connected group, drawing it first if it isn't cached or is out of date.
+	 * @param tileIndex any tile in the group
+	 * @param bounds receives the sprite's position and size on the board
+	 * @return the sprite, or null if the group should be drawn tile by tile
+	 */
+	private BufferedImage getGroupSprite(int tileIndex, Rectangle bounds)
+	{
+		BufferedImage sprite=null;
+		if(groupSprites.isCacheable(tileIndex))
+		{
+			sprite=groupSprites.getSprite(tileIndex,bounds);
+			if(sprite==null)
+			{
+				bounds=getConnectedBounds(tileIndex,connectedTiles,bounds);
+				sprite=groupSprites.createSprite(tileIndex,bounds);
+				if(sprite!=null)
+				{
+					if(gsIndices==null)
+					{
+						gsIndices=new int[tiles.length];
+						gsX=new int[tiles.length];
+						gsY=new int[tiles.length];
+					}
+					int count=0;
+					connectedTiles.setGroup(tileIndex);
+					for(int i=connectedTiles.getNext(); i>=0; i=connectedTiles.getNext())
+					{
+						gsIndices[count]=i;
+						gsX[count]=store.getX(i)-bounds.x-errMargin;
+						gsY[count]=store.getY(i)-bounds.y-errMargin;
+						count++;
+					}
+					ui.drawTiles(sprite,gsIndices,gsX,gsY,count);
+				}
+			}
+		}
+		return sprite;
+	}
+
 	public void mouseClicked(MouseSensetiveShapeEvent e)
 	{}
 	
@@ -593,11 +837,8 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			{
 				//Select a single tile
 				setSelection(tileIndex);
-				//Prepare to repaint the affected area
-				ui.clear(dragBounds);
-				//Redraw the foreground (drag) buffer
-				ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-				ui.repaint(dragBounds);
+				//Show the foreground (drag) buffer
+				ui.showDragBuffer(dragBounds);
 			}
 			if(selectedGroup>=0)
 			{
@@ -615,11 +856,8 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 					//Add a single tile to the selection
 					setSelection(tileIndex);
 					extendingSelection=false;
-					//Prepare to repaint the affected area
-					ui.clear(dragBounds);
-					//Redraw the foreground (drag) buffer
-					ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-					ui.repaint(dragBounds);
+					//Show the foreground (drag) buffer
+					ui.showDragBuffer(dragBounds);
 					//Let the other mousePressed handler know that this has been caught
 					dragging=true;
 				}
@@ -637,15 +875,13 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 				//Remove connected tiles from the background
 				dragBounds=pickConnectedTiles(dragIndex,connectedTiles,dragBounds);
 				dragAllowance=getDragAllowance(dragIndex,connectedTiles,dragBounds,dragAllowance);
-				//Clean up - draw the background onto the foreground
+				//Clean up - redraw the background without the connected tiles
 				ui.erase(dragBounds);
 				draw(dragBounds);
-				ui.clear(dragBounds);
 				ui.clearDragBuffer(dragBounds.width,dragBounds.height);
 				drawDragBuffer(dragBounds,dragIndex,connectedTiles,false);	
-				ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-				//Update the graphics
-				ui.repaint(dragBounds);
+				//Update the graphics - the drag buffer is drawn over the background
+				ui.showDragBuffer(dragBounds);
 			}
 		}
 		e.consume();
@@ -751,17 +987,12 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	
 	/**
 	 * Adjusts the position of a connected group of tiles.
-	 * @param tileSet the ConnectedSet to operate on (such as connectedTiles or selectedTiles)
-	 * @param group index of any tile in the connected group.
+	 * @param group index of any tile in the connected group (see connectedTiles).
 	 * @param offset adjustment value.
 	 */
-	private void adjustTiles(ConnectedSet tileSet, int group, Point offset)
+	private void adjustTiles(int group, Point offset)
 	{
-		tileSet.setGroup(group);
-		for(int i=tileSet.getNext();i>=0;i=tileSet.getNext())
-		{
-			tiles[i].moveTo(tiles[i].getX()+offset.x,tiles[i].getY()+offset.y);
-		}
+		positions.moveGroup(group,offset.x,offset.y);
 	}
 
 	//Since this function will be called so often, keep its variables around.
@@ -769,8 +1000,14 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	private Rectangle mrBounds2=new Rectangle();
 	private Point mrPos=new Point();
 	private Point mrAnchor=new Point();
+	private int [] mrNeighbors=null;
+	private int [] mrGroup=null;
+	//Snap adjustments for neighboring sets, indexed by the tile that matched
+	private int [] mrAdjustX=null, mrAdjustY=null;
 	public void mouseReleased(MouseEvent e)
 	{
+		//Catch up with the pointer before dropping anything
+		dragPacer.flush();
 		mouseCount--;
 		//There is a quirk:
 		//If you click on a menu, then click/drag on the puzzle canvas, the mouseDown event is not fired, but the mouseUp is, causing mouseCount to be less than zero
@@ -780,72 +1017,89 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			int tileCount;
 			if(dragIndex>=0)
 			{
+				if(mrAdjustX==null)
+				{
+					mrGroup=new int[tiles.length];
+					mrAdjustX=new int[tiles.length];
+					mrAdjustY=new int[tiles.length];
+				}
 				selectedTiles.reset();
 				mrBounds=getConnectedBounds(dragIndex,connectedTiles,mrBounds);
-				//Check each connected tile for neighbors
-				int avgXOffset=0;
-				int avgYOffset=0;
-				connectedTiles.setGroup(dragIndex);
 				Point snapOffset=null;
-				//Loop through the whole connected set
-				for(int i=connectedTiles.getNext(); i>=0; i=connectedTiles.getNext())
+				//Only a tile's real neighbors can snap to it, so look those up instead of searching the board
+				//First find the largest neighboring set that lines up - everything else is snapped to it
+				int anchorTile=-1;
+				int anchorIndex=-1;
+				//Copy the dragged group - pickConnectedTiles would interfere with a connectedTiles.getNext() loop
+				int groupSize=0;
+				connectedTiles.setGroup(dragIndex);
+				for(int i=connectedTiles.getNext(); i>=0; i=connectedTiles.getNext()) mrGroup[groupSize++]=i;
+				for(int k=0; k<groupSize; k++)
+				{
+					int i=mrGroup[k];
+					mrNeighbors=tileManager.getNeighbors(i,mrNeighbors);
+					for(int j=0; j<mrNeighbors.length; j++)
+					{
+						int jIndex=mrNeighbors[j];
+						//Tiles that are connected, being dragged or on another layer are not on the board
+						if(jIndex>=0 && boardManager.containsShape(tiles[jIndex])
+							&& (anchorIndex<0 || connectedTiles.getGroupSize(jIndex)>connectedTiles.getGroupSize(anchorIndex))
+							&& checkNeighbors(tiles[i],tiles[jIndex],mrPos)!=null)
+						{
+							anchorTile=i;
+							anchorIndex=jIndex;
+						}
+					}
+				}
+				if(anchorIndex>=0)
 				{
-					MouseSensetiveShape [] intersectingTiles = boardManager.getIntersectingShapes(tiles[i].getBounds());
-					if(intersectingTiles != null)
+					snapOffset=checkNeighbors(tiles[anchorTile],tiles[anchorIndex],mrAnchor);
+					//Remove the anchor set from the board
+					mrBounds.add(pickConnectedTiles(anchorIndex,connectedTiles,mrBounds2));
+					//Add it to the list of tile sets that will be snapped together
+					//selectedTiles is not being used for anything else at the moment...
+					selectedTiles.connect(dragIndex,anchorIndex);
+					//Loop through the whole connected set
+					for(int k=0; k<groupSize; k++)
 					{
-						//Start with the largest connected group
-						for(int j=intersectingTiles.length-1; j>=0; j--)
+						int i=mrGroup[k];
+						mrNeighbors=tileManager.getNeighbors(i,mrNeighbors);
+						for(int j=0; j<mrNeighbors.length; j++)
 						{
-							//Find out if this tile lines up as a neighbor
-							Point adjustment = checkNeighbors(tiles[i],(MouseSensetiveTile)intersectingTiles[j],mrPos);
+							int jIndex=mrNeighbors[j];
+							Point adjustment = jIndex>=0 && boardManager.containsShape(tiles[jIndex]) ? checkNeighbors(tiles[i],tiles[jIndex],mrPos) : null;
 							if(adjustment != null)
 							{
-								int jIndex=((MouseSensetiveTile)intersectingTiles[j]).getIndex();
 								//Remove the tile and its neighbors from the board
 								mrBounds.add(pickConnectedTiles(jIndex,connectedTiles,mrBounds2));
-
-								//Snap everything to the largest set
-								if(snapOffset==null)
-								{
-									mrAnchor.x=mrPos.x;
-									mrAnchor.y=mrPos.y;
-									snapOffset=mrAnchor;
-									//the dragIndex group is not adjusted here because it would interfere with the outer loop connectedTiles.getNext() operation
-								}
-								else
-								{
-									adjustment.x=snapOffset.x-adjustment.x;
-									adjustment.y=snapOffset.y-adjustment.y;
-									//This will mess up the outer loop connectedTiles.getNext() operation...
-									adjustTiles(connectedTiles,jIndex,adjustment);
-									//... so restore it here - go back to the beginning...
-									connectedTiles.setGroup(dragIndex);
-									//... and step through to the current position
-									for(int tmp=connectedTiles.getNext(); tmp>=0 && tmp!=i; tmp=connectedTiles.getNext());
-								}
-
-								//Add the tile and its neighbors to the list of tile sets that will be snapped together
-								//selectedTiles is not being used for anything else at the moment...
+								//Snap to the anchor set - the adjustment is applied once all the neighboring sets are found
+								mrAdjustX[jIndex]=snapOffset.x-adjustment.x;
+								mrAdjustY[jIndex]=snapOffset.y-adjustment.y;
 								selectedTiles.connect(dragIndex,jIndex);
-								if(j > 0)
-								{
-									//Reevaluate intersecting tiles - some may no longer be on the board
-									intersectingTiles = boardManager.getIntersectingShapes(tiles[dragIndex].getBounds());
-									j = intersectingTiles==null ? 0 : intersectingTiles.length;
-								}
 							}
 						}
 					}
+					//Snap the other sets to the anchor set
+					selectedTiles.setGroup(dragIndex);
+					for(int i=selectedTiles.getNext(); i>=0; i=selectedTiles.getNext())
+					{
+						if(i!=dragIndex && i!=anchorIndex)
+						{
+							mrPos.x=mrAdjustX[i];
+							mrPos.y=mrAdjustY[i];
+							adjustTiles(i,mrPos);
+						}
+					}
 				}
 
 				//Adjust the dragIndex group
-				if(snapOffset!=null)adjustTiles(connectedTiles,dragIndex,snapOffset);
+				if(snapOffset!=null)adjustTiles(dragIndex,snapOffset);
 				//snap the sets together
 				int prevSet=-1;
 				selectedTiles.setGroup(dragIndex);
 				for(int i=selectedTiles.getNext(); i>=0; i=selectedTiles.getNext())
 				{
-					if(prevSet >=0) connectedTiles.connect(prevSet,i);
+					if(prevSet >=0) positions.connect(prevSet,i);
 					prevSet = i;
 				}
 				
@@ -861,8 +1115,8 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 					dropConnectedTiles(dragIndex,connectedTiles);
 					ui.erase(mrBounds);
 					draw(mrBounds);
-					ui.clear(mrBounds);
-					ui.repaint(mrBounds);
+					ui.hideDragBuffer();
+					ui.addDirtyRegion(mrBounds);
 					dragIndex=-1;
 				}
 			}
@@ -874,12 +1128,9 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 				setSelection(mrBounds);
 				//Make sure the border is erased
 				mrBounds.x-=1;mrBounds.y-=1;mrBounds.width+=2;mrBounds.height+=2;
-				mrBounds.add(dragBounds);
-				//Prepare to repaint the affected area
-				ui.clear(mrBounds);
-				//Redraw the foreground (drag) buffer
-				ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-				ui.repaint(mrBounds);
+				//Show the foreground (drag) buffer
+				ui.showDragBuffer(dragBounds);
+				ui.addDirtyRegion(mrBounds);
 			}
 			//reset the multi-select drag signal
 			dragging=false;
@@ -951,11 +1202,7 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			{
 				z+=connectedTiles.getGroupSize(i);
 				//remove the connected tiles
-				connectedTiles.setGroup(i);
-				for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
-				{
-					boardManager.removeShape(tiles[j]);
-				}
+				boardManager.removeShapes(groupShapes,listGroup(i,connectedTiles));
 			}
 		}
 		else
@@ -1015,10 +1262,10 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
 			{
 				//Adjust z-order for tiles removed from the board (all selected tiles)
-				tiles[j].setZOrder(z--);
-				//Re-enable events
-				boardManager.addShape(tiles[j]);
+				store.setZOrder(j,z--);
 			}
+			//Re-enable events
+			boardManager.addShapes(groupShapes,listGroup(i,connectedTiles));
 		}
 		//Keep drag bounds in case of extended selection
 		copyRect(dragBounds,ssDragBounds);
@@ -1031,18 +1278,14 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		//Process each connected group
 		for(int i=selectedTiles.getNext();i>=0;i=selectedTiles.getNext())
 		{
-			connectedTiles.setGroup(i);
-			for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
-			{
-				boardManager.removeShape(tiles[j]);
-			}
+			boardManager.removeShapes(groupShapes,listGroup(i,connectedTiles));
 			//Place the tile back on the board
 			dropConnectedTiles(i,connectedTiles);
 		}
 		ui.erase(dragBounds);
 		draw(dragBounds);
-		ui.clear(dragBounds);
-		ui.repaint(dragBounds);
+		ui.hideDragBuffer();
+		ui.addDirtyRegion(dragBounds);
 		selectedGroup=-1;
 	}
 	
@@ -1075,44 +1318,24 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 		dragBounds.y=(boardBounds.height-tileManager.getBoardHeight())/2;
 
 		ui.erase(bounds);
-		ui.clear(bounds);
-
-		ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
+		ui.addDirtyRegion(bounds);
 
-		bounds.add(dragBounds);
-		ui.repaint(bounds);
+		ui.showDragBuffer(dragBounds);
 	}
 	
 	
 	/**
 	 * Returns the bounding box of the connected set
+	 * The box is cached per connected group (see TilePositions.getGroupBounds), so the group is only walked after a tile in it moves on its own.
 	 * @param tileIndex index of a tile belonging to the connected set
-	 * @param tileSet ConnectedSet defining the group of tiles
+	 * @param tileSet ConnectedSet defining the group of tiles - this must be connectedTiles
 	 * @param result storage for the return value
 	 */
 	private Rectangle getConnectedBounds(int tileIndex,ConnectedSet tileSet,Rectangle result)
 	{
-		boolean resultInitialized=false;
-		tileSet.setGroup(tileIndex);
-		//Find the bounding box of the connected set
-		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
-		{
-			Rectangle bounds = tiles[i].getBounds();
-			if(result!=null)
-			{
-				if(resultInitialized)
-				{
-					result.add(bounds);
-				}
-				else
-				{
-					resultInitialized=true;
-					copyRect(bounds,result);
-				}
-			}
-		}
 		if(result!=null)
 		{
+			result=positions.getGroupBounds(tileIndex,store,result);
 			result.x -= errMargin;
 			result.y -= errMargin;
 			result.width += errMargin*2;
@@ -1126,28 +1349,30 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	public void mouseDragged(MouseEvent e)
 	{
 		ignoreClick=false;
-		mouseX = e.getX();
-		mouseY = e.getY();
+		//Rendered on the next frame, along with any other drag events that arrive before then
+		dragPacer.post(e.getX(),e.getY());
+	}
+
+	/**
+	 * Moves the dragged tiles or the selection rectangle to the latest pointer position. Run by dragPacer.
+	 */
+	private void renderDrag()
+	{
+		mouseX = dragPacer.getX();
+		mouseY = dragPacer.getY();
 		if(dragIndex>=0)
 		{
 			//Move connected group
-			copyRect(dragBounds,mdBounds);
 			moveTiles(dragIndex,connectedTiles,mouseX,mouseY,0);
-			ui.clear(mdBounds);
-			ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-			mdBounds.add(dragBounds);
-			ui.repaint(mdBounds);
+			//The old and new positions are updated together on the next flush
+			ui.showDragBuffer(dragBounds);
 		}
 		else if(selectedGroup>=0&&!extendingSelection)
 		{
 			//Move multi-selection
-			copyRect(dragBounds,mdBounds);
 			adjustDragCoords(mouseX,mouseY);
 			moveSelectedTiles(dX,dY);
-			ui.clear(mdBounds);
-			ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-			mdBounds.add(dragBounds);
-			ui.repaint(mdBounds);
+			ui.showDragBuffer(dragBounds);
 		}
 		else
 		{
@@ -1182,16 +1407,17 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 			tileSet.setGroup(tileIndex);
 			for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
 			{
-				tileManager.rotate(tiles[i].getTileIndex(),rotateDirection);
-				mtPoint.x=tiles[i].getX() + offs;mtPoint.y=tiles[i].getY() + offs;
+				tileManager.rotate(i,rotateDirection);
+				mtPoint.x=store.getX(i) + offs;mtPoint.y=store.getY(i) + offs;
 				rot.transform(mtPoint,mtPoint);
-				tiles[i].moveTo(mtPoint.x - offs,mtPoint.y - offs);
+				store.moveTile(i,mtPoint.x - offs,mtPoint.y - offs);
 			}
 
 			//Realign tiles to fix rotation error
 			realignConnectedTiles(tileIndex, tileSet);
 
 			initTileImages(tileIndex,tileSet);
+			buildRotationVariants(tileIndex,tileSet);
 			dragBounds=getConnectedBounds(tileIndex,tileSet,dragBounds);
 			dragAllowance=getDragAllowance(tileIndex,tileSet,dragBounds,dragAllowance);
 			ui.clearDragBuffer(dragBounds.width+errMargin*2,dragBounds.height+errMargin*2);
@@ -1200,11 +1426,7 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 
 		adjustDragCoords(x,y);
 
-		tileSet.setGroup(tileIndex);
-		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
-		{
-			tiles[i].moveTo(tiles[i].getX() + dX, tiles[i].getY() + dY);
-		}
+		positions.moveGroup(tileIndex,dX,dY);
 	}
 	
 	/**
@@ -1214,18 +1436,18 @@ public class JigsawHandler extends PuzzleHandler implements MouseSensetiveShapeL
 	 */
 	private void realignConnectedTiles(int tileIndex, ConnectedSet tileSet)
 	{
-		int x1 = tiles[tileIndex].getX();
-		int y1 = tiles[tileIndex].getY();
+		int x1 = store.getX(tileIndex);
+		int y1 = store.getY(tileIndex);
 		tileSet.setGroup(tileIndex);
 
 		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
 		{
-			int x2 = tiles[i].getX();
-			int y2 = tiles[i].getY();
+			int x2 = store.getX(i);
+			int y2 = store.getY(i);
 //			tiles[i].moveTo(x1+getAdjustedSpacing(x2-x1,tileSpacingX),y1+getAdjustedSpacing(y2-y1,tileSpacingY));
 			int dX = (x2 - x1 + (x2>x1 ? 1 : -1)*tileSpacingX/2)/tileSpacingX;
 			int dY = (y2 - y1 + (y2>y1 ? 1 : -1)*tileSpacingY/2)/tileSpacingY;
-			tiles[i].moveTo(x1 + dX*tileSpacingX,y1 + dY*tileSpacingY);
+			store.moveTile(i,x1 + dX*tileSpacingX,y1 + dY*tileSpacingY);
 		}
 	}
 /*	
@@ -1249,13 +1471,11 @@ System.out.println(result*sign);
 		selectedTiles.setGroup(selectedGroup);
 		for(int i=selectedTiles.getNext();i>=0;i=selectedTiles.getNext())
 		{
-			connectedTiles.setGroup(i);
-			for(int j=connectedTiles.getNext();j>=0;j=connectedTiles.getNext())
-			{
-				boardManager.removeShape(tiles[j]);
-				tiles[j].moveTo(tiles[j].getX() + dX, tiles[j].getY() + dY);
-				boardManager.addShape(tiles[j]);
-			}
+			//Selected tiles are registered with boardManager - they can't be moved while they are registered
+			int count=listGroup(i,connectedTiles);
+			boardManager.removeShapes(groupShapes,count);
+			positions.moveGroup(i,dX,dY);
+			boardManager.addShapes(groupShapes,count);
 		}
 	 }
 	private void adjustDragCoords(int x, int y)
@@ -1300,7 +1520,6 @@ System.out.println(result*sign);
 
 	public void mouseMoved(MouseEvent e){}
 	
-	private Rectangle kpBounds=new Rectangle();
 	public void keyPressed(KeyEvent e)
 	{
 		int keyCode=e.getKeyCode();
@@ -1310,12 +1529,11 @@ System.out.println(result*sign);
 			case KeyEvent.VK_RIGHT:
 				if(dragIndex>=0)
 				{
-					copyRect(dragBounds,kpBounds);
+					//Rotate around the latest pointer position
+					dragPacer.flush();
 					moveTiles(dragIndex,connectedTiles,mouseX,mouseY,keyCode==KeyEvent.VK_LEFT?TileManager.SPIN_CCW:TileManager.SPIN_CW);
-					ui.clear(kpBounds);
-					ui.drawTile(dragBounds,null,PuzzleCanvas.DRAW_DRAGBUFFER,PuzzleCanvas.DRAW_FOREGROUND);
-					kpBounds.add(dragBounds);
-					ui.repaint(kpBounds);
+					//The drag buffer has been redrawn - update it
+					ui.showDragBuffer(dragBounds);
 					//Disable click-rotate
 					ignoreClick=true;
 				}
@@ -1373,11 +1591,12 @@ System.out.println(result*sign);
 			String [] ns = {"x","y","rotation","layer","zIndex"};
 			for(int i=0; i<tiles.length; i++)
 			{
-				data[0][i]=tiles[i].getX();
-				data[1][i]=tiles[i].getY();
-				data[2][i]=tileManager.getRotationCount(i);
+				data[0][i]=store.getX(i);
+				data[1][i]=store.getY(i);
+				data[2][i]=store.getRotation(i);
 			}
-			data[3]=layerIndices;
+			data[3]=store.getLayers();
+			zIndices=zOrder.getZIndices(connectedTiles,zIndices);
 			data[4]=zIndices;
 			result = new ArrayWriter(5,tiles.length,"JigsawHandler").save(data,ns,out,err);
 		}
@@ -1460,7 +1679,7 @@ System.out.println(result*sign);
 		{
 			result.selectedTiles = new ConnectedSet(result.tiles.length);
 			result.zIndices=null;
-			result.layerIndices=null;
+			int [] layers = null;
 			int [] x = null;
 			int [] y = null;
 			int [] rotation = null;
@@ -1473,8 +1692,8 @@ System.out.println(result*sign);
 
 			if(result!=null)
 			{
-				result.layerIndices = reader.getColumn("layer",err);
-				if(result.layerIndices==null) result=null;
+				layers = reader.getColumn("layer",err);
+				if(layers==null) result=null;
 			}
 			
 			if(result != null)
@@ -1503,21 +1722,20 @@ System.out.println(result*sign);
 			
 			if(result != null)
 			{
+				//Connected sets are loaded later, tiles are positioned individually until then
+				result.positions=new TilePositions(result.selectedTiles,result.tiles.length);
+				result.store=new TileStore(tileManager,result.positions,result.errMargin);
+				result.store.setLayers(layers);
 				for(int i=0; i<result.tiles.length; i++)
 				{
-					//Set up tiles
-					result.tiles[i]=new MouseSensetiveTile(tileManager, i,
+					//Set up tiles - z-index is reverse indexed, it will be handled later
+					result.store.moveTile(i,
 						x[i]*imageSize.width/oldImageSize.width, //x - scaled
-						y[i]*imageSize.height/oldImageSize.height, //y - scaled
-						-1, //z-index is reverse indexed, it will be handled later
-						result.errMargin);
+						y[i]*imageSize.height/oldImageSize.height); //y - scaled
+					result.store.setZOrder(i,-1);
+					result.tiles[i]=result.store.getTile(i);
 					tileManager.rotate(i,TileManager.SPIN_CW*rotation[i]); //rotation
 				}
-				//z-index has to be done after tiles are set up
-				for(int i=0; result!=null && i<result.zIndices.length; i++)
-				{
-					result.tiles[result.zIndices[i]].setZOrder(i);
-				}
 			}
 		}
 
@@ -1528,6 +1746,7 @@ System.out.println(result*sign);
 			if(connectedTiles!=null)
 			{
 				result.connectedTiles=connectedTiles;
+				result.positions.setConnectedSet(connectedTiles);
 			}
 			else
 			{
@@ -1560,6 +1779,9 @@ System.out.println(result*sign);
 
 		if(result!=null)
 		{
+			//z-index has to be done after tiles and connected sets are set up
+			result.zOrder=new ZOrderManager(result.tiles.length);
+			result.zOrder.load(result.zIndices,result.connectedTiles,result.store);
 			result.connect(boardCanvas,false);
 		}
 		return result;
@@ -15,70 +15,101 @@
  *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+/**
+ * Changelog:
+ * 
+ * 2026 10 17 - Jon
+ *  - Tile state (position, z order, cached bounds and outline) is kept in TileStore; a tile is only a view onto its entry there.
+ *    getShape returns the store's positioned mask, which is only rebuilt after the tile moves or rotates. getX, getY and getZOrder read the store.
+ *  - Added getOutline - the mask flattened into polygons, built once per rotation step, for intersection tests.
+ *  - Cached the tile's bounds relative to its position, worked out again only when the tile is rotated.
+ *    containsPoint tests the untranslated mask, so neither it nor getBounds(Rectangle) allocates.
+ *  - The rotated mask now comes from the tile manager's mask cache instead of being transformed on each rotation.
+ *  - Positions are now kept by TilePositions, relative to the tile's connected group, so a group can be moved without touching each tile.
+ */
+
 import hulka.event.MouseSensetiveShape;
+import hulka.event.ShapeOutline;
 import java.awt.Shape;
-import java.awt.geom.AffineTransform;
-import java.awt.Point;
 import java.awt.Rectangle;
 import hulka.tilemanager.TileManager;
 
 public class MouseSensetiveTile extends MouseSensetiveShape
 {
-	private TileManager tileManager;
-	private int tileMargin, errMargin;
-	private int tileIndex;
-	public MouseSensetiveTile(TileManager manager, int tileIndex, int x, int y, int zOrder, int errMargin)
+	private TileStore store;
+
+	/**
+	 * Tiles are created by TileStore.getTile.
+	 */
+	MouseSensetiveTile(TileStore store, TileManager manager, int tileIndex)
 	{
-		super(x,y,0,0,tileIndex,zOrder);
+		super(0,0,tileIndex);
+		this.store = store;
 		width = manager.getTileWidth();
 		height = manager.getTileHeight();
-		tileMargin = manager.getTileMargin();
-		this.errMargin = errMargin;
 		width=(width>height?width:height) + manager.getTileMargin()*2;
 		height = width;
-		this.tileIndex = tileIndex;
-		this.tileManager = manager;
 	}
 
-	private MouseSensetiveTile(int x, int y, int width, int height, int index, int zOrder)
+	public void setZOrder(int zOrder)
 	{
-		super(x,y,width,height,index,zOrder);
+		store.setZOrder(index,zOrder);
 	}
-	
-	public void setZOrder(int zOrder)
+
+	public int getZOrder()
 	{
-		this.zOrder = zOrder;
+		return store.getZOrder(index);
 	}
-	
+
 	public int getTileIndex()
 	{
-		return tileIndex;
+		return index;
 	}
 	
+	public int getX()
+	{
+		return store.getX(index);
+	}
+
+	public int getY()
+	{
+		return store.getY(index);
+	}
+
+	/**
+	 * Moves this tile only. To move its whole connected group, use TilePositions.moveGroup.
+	 */
 	public void moveTo(int x, int y)
 	{
-		this.x = x;
-		this.y = y;
+		store.moveTile(index,x,y);
 	}
-	
+
 	public boolean containsPoint(int x, int y)
 	{
-		return getShape().contains(x,y);
+		return store.contains(index,x,y);
 	}
 	
 	public Shape getShape()
 	{
-		AffineTransform transform = tileManager.getRotationTransform(tileIndex,AffineTransform.getTranslateInstance(this.x + tileMargin + errMargin,this.y + tileMargin + errMargin),0);
-		return transform.createTransformedShape(tileManager.getTileMask(tileIndex));
+		return store.getShape(index);
 	}
-	
+
+	public ShapeOutline getOutline()
+	{
+		return store.getOutline(index);
+	}
+
 	public Rectangle getBounds()
 	{
-		Rectangle bounds = getShape().getBounds();
-		bounds.x -= errMargin;
-		bounds.y -= errMargin;
-		bounds.width += errMargin*2;
-		bounds.height += errMargin*2;
-		return bounds;
+		return getBounds(null);
+	}
+
+	/**
+	 * Returns the tile's bounding box, including errMargin.
+	 * @param bounds storage for the return value, or null
+	 */
+	public Rectangle getBounds(Rectangle bounds)
+	{
+		return store.getBounds(index,bounds);
 	}
 }
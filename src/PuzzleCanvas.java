@@ -19,6 +19,19 @@
 
 /**
  * Changelog:
+ * 2026 10 17 - Jon
+ *  - Replaced the single column tileBuffer with a TileAtlas of square, power of two pages.
+ *  - Added buildTileImages - builds tile images on worker threads, each with its own scratch images, and shows progress.
+ *  - Light and shadow hints are cached per tile and rotation step by BevelCache.
+ *  - Tile images are kept by TileImageCache, within a memory budget (see setTileCacheSize). buildTileImage only describes the image,
+ *    it is built when it is first drawn, and rebuilt if it has been dropped to make room for other tiles.
+ *  - Tile images can be cached for each rotation step (see setBuffers(int,int,int,int)), and built ahead of time (see buildRotationVariants).
+ *    clearBuffers shuts down the variant builder thread.
+ *  - Added drawTiles and drawSprite, for drawing large connected groups as a single image.
+ *  - Added per-layer background rasters (see setLayerCount and setLayer). Layers that aren't showing keep their tiles drawn,
+ *    so switching back to them doesn't need a redraw.
+ *  - Added showDragBuffer and hideDragBuffer - the drag buffer is composited over the background when dirty regions are flushed (see JBufferedCanvas.addDirtyRegion).
+ * 
  * 2012 02 14 - Jon
  *  - Added guiImagePath parameter to the constructor so PuzzleCanvas knows where to look for cursor images.
  * 
@@ -52,14 +65,11 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
 
 //Graphics
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.Color;
-import java.awt.AlphaComposite;
-import java.awt.RenderingHints;
 
 //Events
 import java.awt.event.ActionListener;
@@ -75,6 +85,14 @@ import javax.swing.JColorChooser;
 
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseListener;
+import javax.swing.SwingUtilities;
+
+//Threads
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PuzzleCanvas extends JBufferedCanvas
 {
@@ -86,13 +104,28 @@ public class PuzzleCanvas extends JBufferedCanvas
 	public static final int DRAW_ROTATECCW = 5;
 	public static final int DRAW_ROTATECW = 6;
 	public static final int CURSOR_SIZE = 32;
+	private static final int PROGRESS_HEIGHT = 16;
 
 	private BufferedImage puzzleImage=null;
-	private BufferedImage tileBuffer=null;
-	private BufferedImage tileIntermediate=null;
+	//All tile images are built and kept here
+	private TileImageCache tileImages=null;
+	//Tweak this to limit memory use - the default memory budget for tile images
+	private static final long DEFAULT_TILE_CACHE_BYTES = 128L*1024*1024;
+	//Tile images are always cached for at least this many tiles, so a redraw doesn't have to rebuild every tile
+	private static final int MIN_TILE_CACHE_SLOTS = 64;
+	private long tileCacheBytes = DEFAULT_TILE_CACHE_BYTES;
+	//Incremented to abandon background tile builds (see buildTileImages)
+	private volatile int buildGeneration=0;
+	//Builds rotation variants in the background, see buildRotationVariants - shut down by clearBuffers
+	private ExecutorService variantBuilder=null;
 	private BufferedImage dragBuffer=null;
 	private BufferedImage cwImage=null;
 	private BufferedImage ccwImage=null;
+	//Background rasters, one per layer - see setLayerCount. Layer 0 uses the image the canvas was created with
+	private BufferedImage [] layerImages=null;
+	//Whether each raster holds its layer's tiles, or has to be redrawn
+	private boolean [] layerValid=null;
+	private int currentLayer=0;
 
 	private AffineTransform lightTransform = AffineTransform.getTranslateInstance(1,1);
 	private AffineTransform shadowTransform = AffineTransform.getTranslateInstance(-1,-1);
@@ -109,8 +142,6 @@ public class PuzzleCanvas extends JBufferedCanvas
 	private int errMargin;
 	private int tileCount;
 	private int tileIndex;
-	private Shape [] tileMasks;
-	private Shape [] rotatedMasks;
 
 	public PuzzleCanvas(Dimension size,String guiImagePath)
 	{
@@ -156,7 +187,8 @@ public class PuzzleCanvas extends JBufferedCanvas
 	}
 
 	/**
-	 * Erases the entire drawing area by setting it to the background color
+	 * Erases the entire drawing area by setting it to the background color.
+	 * This starts a full redraw - the current layer's raster is considered up to date afterwards (see setLayer).
 	 */
 	public void erase()
 	{
@@ -164,6 +196,45 @@ public class PuzzleCanvas extends JBufferedCanvas
 		g2d.setBackground(backgroundColor);
 		g2d.clearRect(0,0,getWidth(),getHeight());
 		g2d.dispose();
+		if(layerValid!=null)layerValid[currentLayer]=true;
+	}
+
+	/**
+	 * Sets the number of layers, each with its own background raster, and shows layer 0.
+	 * Every layer will have to be redrawn.
+	 * @param count number of layers
+	 */
+	public void setLayerCount(int count)
+	{
+		if(count<1)count=1;
+		BufferedImage base = layerImages==null ? getBackgroundImage() : layerImages[0];
+		layerImages=new BufferedImage[count];
+		layerImages[0]=base;
+		layerValid=new boolean[count];
+		currentLayer=0;
+		setBackgroundImage(base);
+	}
+
+	/**
+	 * Shows a layer's background raster. Drawing to DRAW_BACKGROUND then goes to this layer.
+	 * Rasters for the other layers are left as they are, so switching back to a layer is a single blit.
+	 * The foreground isn't updated - call addDirtyRegion or clear and repaint afterwards.
+	 * @param layer the layer, 0 to the layer count less one
+	 * @return true if the raster still holds the layer's tiles, false if the layer has to be redrawn (starting with erase())
+	 */
+	public boolean setLayer(int layer)
+	{
+		if(layerImages==null)setLayerCount(1);
+		if(layer<0 || layer>=layerImages.length)return false;
+		if(layerImages[layer]==null)
+		{
+			//Created the first time the layer is shown
+			BufferedImage base=layerImages[0];
+			layerImages[layer]=new BufferedImage(base.getWidth(),base.getHeight(),base.getType());
+		}
+		currentLayer=layer;
+		setBackgroundImage(layerImages[layer]);
+		return layerValid[layer];
 	}
 
 	/**
@@ -214,15 +285,21 @@ public class PuzzleCanvas extends JBufferedCanvas
 				g2d = (Graphics2D)(dragBuffer.getGraphics());
 			break;
 		}
+		g2d.setClip(null);
+		if(clipRect != null)
+		{
+			g2d.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+		}
 		switch(sourceLayer)
 		{
 			case DRAW_DRAGBUFFER:
 				img = dragBuffer;
 			break;
 			case DRAW_TILEBUFFER:
-				img = tileBuffer;
-				top=tileIndex*(tileSize+errMargin*2);
-			break;
+				//Built here if it isn't cached
+				tileImages.drawTileImage(g2d,tileIndex,bounds);
+				g2d.dispose();
+				return;
 			case DRAW_PUZZLEIMAGE:
 				img = puzzleImage;
 			break;
@@ -233,34 +310,61 @@ public class PuzzleCanvas extends JBufferedCanvas
 				img = cwImage;
 			break;
 		}
-		g2d.setClip(null);
-		if(clipRect != null)
+		g2d.drawImage(img,bounds.x,bounds.y,bounds.x+bounds.width,bounds.y+bounds.height,left,top,bounds.width+left,bounds.height+top,null);
+		g2d.dispose();
+	}
+
+	/**
+	 * Draws a list of tiles onto an image, such as a connected group's sprite (see GroupSpriteCache).
+	 * @param target image to draw on
+	 * @param indices tile indices
+	 * @param x x coordinates of the tile images within target
+	 * @param y y coordinates of the tile images within target
+	 * @param count number of tiles to draw
+	 */
+	public void drawTiles(BufferedImage target, int [] indices, int [] x, int [] y, int count)
+	{
+		Graphics2D g2d = target.createGraphics();
+		Rectangle bounds = new Rectangle(0,0,tileSize+errMargin*2,tileSize+errMargin*2);
+		for(int i=0; i<count; i++)
 		{
-			g2d.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+			bounds.x=x[i];
+			bounds.y=y[i];
+			tileImages.drawTileImage(g2d,indices[i],bounds);
 		}
-		g2d.drawImage(img,bounds.x,bounds.y,bounds.x+bounds.width,bounds.y+bounds.height,left,top,bounds.width+left,bounds.height+top,null);
 		g2d.dispose();
 	}
 
 	/**
-	 * Just using shape clipping doesn't apply antialiasing, this gives a smoother result.
-	 * Applies a tileSize by tileSize clip region.
-	 * @param g2d graphics context to apply clip region to.
-	 * @param mask clip region.
-	 * @param left x coordinate of upper left corner.
-	 * @param top y coordinate of upper left corner.
+	 * Draws an image made by drawTiles on the drawing area.
+	 * @param sprite the image
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param clipRect the clipping region, or null
+	 * @param drawLayer DRAW_BACKGROUND, DRAW_FOREGROUND or DRAW_DRAGBUFFER
 	 */
-	private void applyAntialiasedMask(Graphics2D g2d,Shape mask,int left,int top)
+	public void drawSprite(BufferedImage sprite, int x, int y, Rectangle clipRect, int drawLayer)
 	{
-		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		//Clear the alpha
-		g2d.setComposite(AlphaComposite.Clear);
-		g2d.fillRect(left,top, tileSize, tileSize);
-		//render the clip shape to alpha
-		g2d.setComposite(AlphaComposite.Src);
-		g2d.setColor(Color.WHITE);
-		g2d.fill(mask);
-		g2d.setComposite(AlphaComposite.SrcAtop);
+		Graphics2D g2d = null;
+		switch(drawLayer)
+		{
+			case DRAW_BACKGROUND:
+				g2d = (Graphics2D)getBackgroundGraphics();
+			break;
+			case DRAW_FOREGROUND:
+				g2d = (Graphics2D)getForegroundGraphics();
+			break;
+			case DRAW_DRAGBUFFER:
+				g2d = (Graphics2D)(dragBuffer.getGraphics());
+			break;
+		}
+		g2d.setClip(null);
+		if(clipRect != null)
+		{
+			g2d.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+		}
+		g2d.drawImage(sprite,x,y,null);
+		g2d.dispose();
 	}
 
 	public void drawRect(Rectangle rect, int drawLayer)
@@ -288,7 +392,7 @@ public class PuzzleCanvas extends JBufferedCanvas
 	 */
 	public void setTileMask(int index, Shape mask)
 	{
-		tileMasks[index]=mask;
+		tileImages.setTileMask(index,mask);
 	}
 	
 	/**
@@ -310,14 +414,15 @@ public class PuzzleCanvas extends JBufferedCanvas
 			break;
 		}
 		g2d.clip(null);
-		g2d.clip(AffineTransform.getTranslateInstance(x,y).createTransformedShape(rotatedMasks[tileIndex]));
+		g2d.clip(AffineTransform.getTranslateInstance(x,y).createTransformedShape(tileImages.getRotatedMask(tileIndex)));
 		g2d.setColor(selectedColor);
 		g2d.fillRect(x,y,tileSize,tileSize);
 		g2d.dispose();
 	}
 
 	/**
-	 * Builds the image for the current tile. This should be called during setup for each tile, and when a tile is rotated.
+	 * Describes the image for the current tile. This should be called when a tile is rotated, or for each tile during setup
+	 * (buildTileImages does the same for a list of tiles). The image is built when it is first drawn.
 	 * The current tile should be set through a call to setTileIndex first.
 	 * @param fromX x coordinate of original tile location
 	 * @param fromY y coordinate of original tile location
@@ -325,54 +430,213 @@ public class PuzzleCanvas extends JBufferedCanvas
 	 */
 	public void buildTileImage(int fromX, int fromY, AffineTransform rotation)
 	{
-		//Draw the tile's image
-		Graphics2D gInt = (Graphics2D)tileIntermediate.getGraphics();
-		//Highest quality rotation and scaling
-		gInt.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-
-		AffineTransform tf = gInt.getTransform();
-		if(rotation != null) gInt.transform(rotation);
-		int size = tileSize + errMargin*2;
-		int x = fromX - errMargin;
-		int y = fromY - errMargin;
-		gInt.drawImage(puzzleImage,0,0,size,size,x,y,x + size,y + size, null);
+		buildTileImage(fromX,fromY,rotation,-1);
+	}
 
-		gInt.setTransform(tf);
+	/**
+	 * Same as buildTileImage(fromX, fromY, rotation), for a tile whose rotation is one of a fixed number of steps.
+	 * The light and shadow hints are cached for each tile and step, so they only have to be worked out once.
+	 * @param rotationStep the tile's rotation step, or -1 if rotations don't repeat
+	 */
+	public void buildTileImage(int fromX, int fromY, AffineTransform rotation, int rotationStep)
+	{
+		tileImages.setTileImage(tileIndex,fromX,fromY,rotation,rotationStep);
+	}
 
-		Rectangle unMask = new Rectangle(0,0,size,size);
-		Shape rMask=tileMasks[tileIndex];
-		if(rotation!=null)
+	/**
+	 * Describes a list of tile images, then builds as many as the tile image cache holds on one worker thread per processor,
+	 * leaving the event dispatch thread free. Tiles are built in the order given, so the ones that will be seen first should come first.
+	 * Any tiles that don't fit in the cache are built when they are drawn.
+	 * Progress is shown on the foreground layer. Call setTileMask for each tile first.
+	 * If clearBuffers or setBuffers is called before the images are done, the rest of the build is abandoned and onDone is not run.
+	 * @param indices tiles to build
+	 * @param fromX x coordinates of original tile locations
+	 * @param fromY y coordinates of original tile locations
+	 * @param rotations current tile rotation transforms, entries may be null
+	 * @param rotationSteps current tile rotation steps (see buildTileImage(int,int,AffineTransform,int)), or null if rotations don't repeat
+	 * @param count number of tiles
+	 * @param onDone run on the event dispatch thread once the images are built
+	 */
+	public void buildTileImages(final int [] indices, int [] fromX, int [] fromY, AffineTransform [] rotations, int [] rotationSteps, int count, final Runnable onDone)
+	{
+		final int generation=++buildGeneration;
+		//Workers hang on to this in case the buffers are cleared part way through
+		final TileImageCache cache=tileImages;
+		for(int i=0; i<count; i++)
 		{
-			rotation.translate(errMargin,errMargin);
-			rMask=rotation.createTransformedShape(rMask);
+			cache.setTileImage(indices[i],fromX[i],fromY[i],rotations[i],rotationSteps==null ? -1 : rotationSteps[i]);
 		}
+		//Building more than the cache holds would only push out the first tiles
+		final int buildCount=count<cache.getSlotCount() ? count : cache.getSlotCount();
+		final AtomicInteger next=new AtomicInteger();
+		final AtomicInteger done=new AtomicInteger();
+		final AtomicInteger shownPercent=new AtomicInteger(-1);
+		int processors=Runtime.getRuntime().availableProcessors();
+		final int workerCount=buildCount<processors ? (buildCount<1 ? 1 : buildCount) : processors;
+		Thread builder=new Thread("Tile builder")
+		{
+			public void run()
+			{
+				ExecutorService executor=Executors.newFixedThreadPool(workerCount);
+				try
+				{
+					Future<?> [] results=new Future<?>[workerCount];
+					for(int w=0; w<workerCount; w++)
+					{
+						results[w]=executor.submit(new Runnable()
+						{
+							public void run()
+							{
+								TileImageCache.Scratch scratch=cache.new Scratch();
+								for(int i=next.getAndIncrement(); i<buildCount && generation==buildGeneration; i=next.getAndIncrement())
+								{
+									cache.build(indices[i],scratch);
+									showProgress(generation,done.incrementAndGet(),buildCount,shownPercent);
+								}
+							}
+						});
+					}
+					for(int w=0; w<workerCount; w++)
+					{
+						try
+						{
+							results[w].get();
+						}
+						catch(Exception ex)
+						{
+							ex.printStackTrace();
+						}
+					}
+				}
+				finally
+				{
+					executor.shutdown();
+				}
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if(generation==buildGeneration && onDone!=null)onDone.run();
+					}
+				});
+			}
+		};
+		builder.setDaemon(true);
+		builder.start();
+	}
 
-		gInt.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		//light hints
-		Area mask = new Area(unMask);
-		Shape shifted = lightTransform.createTransformedShape(rMask);
-		mask.subtract(new Area(shifted));
-		gInt.setColor(lightColor);
-		gInt.fill(mask);
+	/**
+	 * Describes one rotation variant of the current tile's image, so it can be built ahead of time by buildRotationVariants.
+	 * Call buildTileImage for the tile first.
+	 * @param rotationStep the rotation step
+	 * @param rotation rotation transform for that step
+	 */
+	public void setRotationVariant(int rotationStep, AffineTransform rotation)
+	{
+		tileImages.setRotationVariant(tileIndex,rotationStep,rotation);
+	}
 
-		//shadow hints
-		mask = new Area(unMask);
-		shifted = shadowTransform.createTransformedShape(rMask);
-		mask.subtract(new Area(shifted));
-		gInt.setColor(shadowColor);
-		gInt.fill(mask);
+	/**
+	 * Builds rotation variants of tile images in the background, so the tiles can be rotated to those steps without a rebuild.
+	 * The variants should be described first (see setRotationVariant). Variants that are already cached are skipped.
+	 * At most a quarter of the tile image cache is used, so variants don't push out the images on display.
+	 * @param indices tiles
+	 * @param rotationSteps rotation step to build for each tile
+	 * @param count number of variants to build
+	 */
+	public void buildRotationVariants(int [] indices, int [] rotationSteps, int count)
+	{
+		final TileImageCache cache=tileImages;
+		final int generation=buildGeneration;
+		if(count>cache.getSlotCount()/4)count=cache.getSlotCount()/4;
+		final int [] variantIndices=new int[count];
+		final int [] variantSteps=new int[count];
+		System.arraycopy(indices,0,variantIndices,0,count);
+		System.arraycopy(rotationSteps,0,variantSteps,0,count);
+		synchronized(this)
+		{
+			if(variantBuilder==null)
+			{
+				variantBuilder=Executors.newSingleThreadExecutor(new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+					{
+						Thread t=new Thread(r,"Tile variant builder");
+						t.setDaemon(true);
+						t.setPriority(Thread.MIN_PRIORITY);
+						return t;
+					}
+				});
+			}
+			variantBuilder.submit(new Runnable()
+			{
+				public void run()
+				{
+					TileImageCache.Scratch scratch=cache.new Scratch();
+					for(int i=0; i<variantIndices.length && generation==buildGeneration; i++)
+					{
+						cache.buildVariant(variantIndices[i],variantSteps[i],scratch);
+					}
+				}
+			});
+		}
+	}
 
-		gInt.dispose();
+	/**
+	 * Draws a progress bar on the foreground layer, at most once per percent.
+	 */
+	private void showProgress(final int generation, int done, int count, AtomicInteger shownPercent)
+	{
+		final int percent=(int)((long)done*100/count);
+		int shown=shownPercent.get();
+		if(percent>shown && shownPercent.compareAndSet(shown,percent))
+		{
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					if(generation!=buildGeneration)return;
+					Dimension s=getPreferredSize();
+					int width=s.width/3;
+					Rectangle bar=new Rectangle((s.width-width)/2,s.height/2-PROGRESS_HEIGHT/2,width,PROGRESS_HEIGHT);
+					Graphics2D g2d=(Graphics2D)getForegroundGraphics();
+					g2d.setColor(contrastColor);
+					g2d.drawRect(bar.x,bar.y,bar.width,bar.height);
+					g2d.fillRect(bar.x,bar.y,bar.width*percent/100,bar.height);
+					g2d.dispose();
+					repaint(bar.x,bar.y,bar.width+1,bar.height+1);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Sets the memory budget for tile images, taking effect at the next call to setBuffers.
+	 * Tile images that don't fit are dropped, least recently drawn first, and rebuilt when they are drawn again.
+	 * @param bytes the budget
+	 */
+	public void setTileCacheSize(long bytes)
+	{
+		tileCacheBytes=bytes;
+	}
 
-		Graphics2D g2d = (Graphics2D)tileBuffer.getGraphics();
+	/**
+	 * Shows the drag buffer on the foreground, at bounds, until hideDragBuffer is called.
+	 * It is drawn over the background whenever dirty regions are flushed; the old and new positions are marked dirty.
+	 * Call this again after redrawing the drag buffer, even if it hasn't moved.
+	 * @param bounds position and size of the visible part of the drag buffer
+	 */
+	public void showDragBuffer(Rectangle bounds)
+	{
+		setOverlay(dragBuffer,bounds);
+	}
 
-		rotatedMasks[tileIndex]=rMask;
-		//tile shape
-		int top=tileIndex*(tileSize+errMargin*2);
-		AffineTransform trans=AffineTransform.getTranslateInstance(0,top);
-		rMask=trans.createTransformedShape(rMask);
-		applyAntialiasedMask(g2d,rMask,0,top);
-		g2d.drawImage(tileIntermediate,0,top,null);
+	/**
+	 * Removes the drag buffer from the foreground. Its last position is marked dirty.
+	 */
+	public void hideDragBuffer()
+	{
+		setOverlay(null,null);
 	}
 
 	public void clearDragBuffer(int width, int height)
@@ -384,6 +648,16 @@ public class PuzzleCanvas extends JBufferedCanvas
 	}
 
 	public void setBuffers(int tileCount, int tileSize, int errMargin)
+	{
+		setBuffers(tileCount,tileSize,errMargin,0);
+	}
+
+	/**
+	 * Same as setBuffers(tileCount, tileSize, errMargin), for tiles that rotate in fixed steps.
+	 * Tile images are then cached for each step, so rotating a tile back to an earlier step doesn't rebuild its image.
+	 * @param rotationSteps number of rotation steps (see TileManager.getRotationSteps)
+	 */
+	public void setBuffers(int tileCount, int tileSize, int errMargin, int rotationSteps)
 	{
 		int w=puzzleImage.getWidth();
 		int h=puzzleImage.getHeight();
@@ -391,12 +665,13 @@ public class PuzzleCanvas extends JBufferedCanvas
 		this.tileIndex=0;
 		this.tileSize = tileSize;
 		this.errMargin=errMargin;
-		//All tiles will be stored here
-		tileBuffer = new BufferedImage(tileSize + errMargin*2,tileCount*(tileSize + errMargin*2),BufferedImage.TYPE_INT_ARGB);
-		tileMasks=new Shape[tileCount];
-		rotatedMasks=new Shape[tileCount];
-		//Used for intermediate steps in drawing tiles
-		tileIntermediate=new BufferedImage(tileSize + errMargin*2,tileSize + errMargin*2,BufferedImage.TYPE_INT_ARGB);
+		int cellSize=tileSize + errMargin*2;
+		long slotCount=tileCacheBytes/((long)cellSize*cellSize*4);
+		if(slotCount<MIN_TILE_CACHE_SLOTS)slotCount=MIN_TILE_CACHE_SLOTS;
+		if(slotCount>(long)tileCount*Math.max(1,rotationSteps))slotCount=(long)tileCount*Math.max(1,rotationSteps);
+		buildGeneration++;
+		BevelCache bevels=new BevelCache(cellSize,lightTransform,lightColor,shadowTransform,shadowColor);
+		tileImages = new TileImageCache(puzzleImage,tileCount,tileSize,errMargin,rotationSteps,(int)slotCount,bevels);
 		//the dragbuffer must be able to accommodate the whole image at any rotation - use the corner to corner distance
 //		int bufferSize = (int)Math.sqrt(w*w + h*h) + errMargin*2;
 		//the dragbuffer must be able to accommodate the whole board (plus half a tile on each side) at any rotation
@@ -407,11 +682,19 @@ public class PuzzleCanvas extends JBufferedCanvas
 
 	public void clearBuffers()
 	{
+		setLayerCount(1);
 		tileSize = -1;
-		tileBuffer=null;
-		tileMasks=null;
-		rotatedMasks=null;
-		tileIntermediate=null;
+		tileImages=null;
+		buildGeneration++;
+		//Stop building variants for the old tiles - the next buildRotationVariants starts a new builder
+		synchronized(this)
+		{
+			if(variantBuilder!=null)
+			{
+				variantBuilder.shutdownNow();
+				variantBuilder=null;
+			}
+		}
 	}
 
 	public void showPreview()
@@ -432,6 +715,11 @@ public class PuzzleCanvas extends JBufferedCanvas
 	public void setBackground(Color color)
 	{
 		backgroundColor=color;
+		//Every layer has to be redrawn with the new color
+		if(layerValid!=null)
+		{
+			for(int i=0; i<layerValid.length; i++)layerValid[i]=false;
+		}
 		hsb=Color.RGBtoHSB(color.getRed(),color.getGreen(),color.getBlue(),hsb);
 		contrastColor=Color.getHSBColor(hsb[0]+0.5f,1-hsb[1],1-hsb[2]);
 	}
@@ -0,0 +1,232 @@
+/**
+ *      TileAtlas.java
+ *
+ *      Copyright 2010 - 2012 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created to replace PuzzleCanvas' single column tileBuffer, which grew too tall for large puzzles.
+ *  - Changed to a fixed number of slots, reused least recently used first, so tile images can be cached within a memory budget.
+ *  - Added contains
+ */
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Stores tile images in square, power of two sized pages, packed in rows and columns.
+ * Keeping pages small lets Java2D accelerate them, and keeps image dimensions sane for any number of tiles.
+ *
+ * The pages are divided into a fixed number of slots, which may be fewer than the number of tiles.
+ * A tile is given a slot when its image is stored (see allocate), and the least recently used tile loses its slot
+ * when they run out, so the atlas works as a cache with a fixed memory size.
+ * Slot positions are looked up through getPage, getX and getY.
+ *
+ * The atlas is not synchronized; callers sharing it between threads should synchronize on it.
+ */
+public class TileAtlas
+{
+	//Tweak this to trade off page count against page size. Pages are only made larger than this if a single tile doesn't fit.
+	public static final int MAX_PAGE_SIZE = 2048;
+
+	private BufferedImage [] pages;
+	private int cellSize;
+	//Indirection table: page and pixel position of each slot
+	private int [] slotPage;
+	private int [] slotX;
+	private int [] slotY;
+	//Slot holding each tile's image, or -1, and the tile held in each slot, or -1
+	private int [] tileSlot;
+	private int [] slotTile;
+	//Slots in order of use, as a circular doubly linked list - the least recently used slot follows the most recently used one
+	private int [] nextSlot;
+	private int [] previousSlot;
+	private int mostRecent;
+
+	/**
+	 * @param tileCount number of tiles
+	 * @param cellSize width and height of each tile image
+	 * @param slotCount number of tile images to hold, at most tileCount
+	 */
+	public TileAtlas(int tileCount, int cellSize, int slotCount)
+	{
+		if(slotCount>tileCount)slotCount=tileCount;
+		if(slotCount<1)slotCount=1;
+		this.cellSize=cellSize;
+		slotPage=new int[slotCount];
+		slotX=new int[slotCount];
+		slotY=new int[slotCount];
+		slotTile=new int[slotCount];
+		nextSlot=new int[slotCount];
+		previousSlot=new int[slotCount];
+		tileSlot=new int[tileCount];
+		for(int i=0; i<tileCount; i++)tileSlot[i]=-1;
+
+		int pageSize=getPageSize(slotCount,cellSize);
+		int perRow=pageSize/cellSize;
+		int perPage=perRow*perRow;
+		int pageCount=(slotCount+perPage-1)/perPage;
+		pages=new BufferedImage[pageCount];
+		for(int page=0; page<pageCount; page++)
+		{
+			//The last page only needs to be big enough for the slots left over
+			int size=page==pageCount-1 ? getPageSize(slotCount-page*perPage,cellSize) : pageSize;
+			pages[page]=new BufferedImage(size,size,BufferedImage.TYPE_INT_ARGB);
+		}
+		for(int i=0; i<slotCount; i++)
+		{
+			int page=i/perPage;
+			int cell=i%perPage;
+			//Pack into the last page's own width, it may be narrower than the others
+			int rowLength=pages[page].getWidth()/cellSize;
+			slotPage[i]=page;
+			slotX[i]=(cell%rowLength)*cellSize;
+			slotY[i]=(cell/rowLength)*cellSize;
+			slotTile[i]=-1;
+			nextSlot[i]=(i+1)%slotCount;
+			previousSlot[i]=(i+slotCount-1)%slotCount;
+		}
+		//Slot 0 is used first
+		mostRecent=slotCount-1;
+	}
+
+	/**
+	 * Finds the smallest power of two page size that holds slotCount cells, up to MAX_PAGE_SIZE.
+	 * If a single cell is larger than MAX_PAGE_SIZE, the page is made big enough for one cell.
+	 */
+	private static int getPageSize(int slotCount, int cellSize)
+	{
+		int size=1;
+		while(size<cellSize)size*=2;
+		while(size<MAX_PAGE_SIZE && (long)(size/cellSize)*(size/cellSize)<slotCount)size*=2;
+		return size;
+	}
+
+	/**
+	 * Looks up the slot holding a tile's image, and marks it as the most recently used.
+	 * @return the slot, or -1 if the tile's image isn't stored
+	 */
+	public int getSlot(int tileIndex)
+	{
+		int slot=tileSlot[tileIndex];
+		if(slot>=0)touch(slot);
+		return slot;
+	}
+
+	/**
+	 * Checks whether a tile's image is stored, without marking it as used.
+	 */
+	public boolean contains(int tileIndex)
+	{
+		return tileSlot[tileIndex]>=0;
+	}
+
+	/**
+	 * Gives a tile a slot, taking it from the least recently used tile if there are no free slots.
+	 * The slot's contents are left as they are, for the caller to replace.
+	 * @return the slot
+	 */
+	public int allocate(int tileIndex)
+	{
+		int slot=tileSlot[tileIndex];
+		if(slot<0)
+		{
+			slot=nextSlot[mostRecent];
+			if(slotTile[slot]>=0)tileSlot[slotTile[slot]]=-1;
+			slotTile[slot]=tileIndex;
+			tileSlot[tileIndex]=slot;
+		}
+		touch(slot);
+		return slot;
+	}
+
+	/**
+	 * Frees a tile's slot, such as when its image is out of date. The slot will be the next one reused.
+	 */
+	public void release(int tileIndex)
+	{
+		int slot=tileSlot[tileIndex];
+		if(slot>=0)
+		{
+			tileSlot[tileIndex]=-1;
+			slotTile[slot]=-1;
+			touch(slot);
+			//Least recently used is the one after the most recent
+			mostRecent=previousSlot[slot];
+		}
+	}
+
+	/**
+	 * Moves a slot to the most recently used end of the list.
+	 */
+	private void touch(int slot)
+	{
+		if(slot!=mostRecent)
+		{
+			//Unlink
+			nextSlot[previousSlot[slot]]=nextSlot[slot];
+			previousSlot[nextSlot[slot]]=previousSlot[slot];
+			//Link after the current most recent
+			int after=nextSlot[mostRecent];
+			nextSlot[mostRecent]=slot;
+			previousSlot[slot]=mostRecent;
+			nextSlot[slot]=after;
+			previousSlot[after]=slot;
+			mostRecent=slot;
+		}
+	}
+
+	/**
+	 * Returns the page containing a slot.
+	 */
+	public BufferedImage getPage(int slot)
+	{
+		return pages[slotPage[slot]];
+	}
+
+	/**
+	 * Returns the x coordinate of a slot within its page.
+	 */
+	public int getX(int slot)
+	{
+		return slotX[slot];
+	}
+
+	/**
+	 * Returns the y coordinate of a slot within its page.
+	 */
+	public int getY(int slot)
+	{
+		return slotY[slot];
+	}
+
+	public int getCellSize()
+	{
+		return cellSize;
+	}
+
+	public int getSlotCount()
+	{
+		return slotTile.length;
+	}
+
+	public int getPageCount()
+	{
+		return pages.length;
+	}
+}
@@ -0,0 +1,360 @@
+/**
+ *      TileImageCache.java
+ *
+ *      Copyright 2010 - 2012 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created from PuzzleCanvas' tile building code, so tile images can be built when they are first drawn and dropped when memory runs short.
+ *  - Images are kept per rotation step, so rotating a tile back to a cached step doesn't rebuild its image.
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Builds and stores tile images for PuzzleCanvas.
+ * Callers describe each tile image with setTileImage - where it comes from in the puzzle image and how it is rotated.
+ * The image itself is only built when it is first drawn, or ahead of time through build, and is kept in a TileAtlas
+ * with a fixed number of slots. When the slots run out, the least recently drawn image is dropped, to be built again if it is needed.
+ *
+ * For tiles that rotate in fixed steps, each rotation step (variant) of a tile has its own image. Rotating a tile back to a step
+ * whose image is still cached only switches the image the tile uses. Variants other than the current one can be described
+ * through setRotationVariant and built ahead of time through buildVariant.
+ *
+ * Drawing and describing tiles must be done on one thread (normally the event dispatch thread).
+ * build and buildVariant may be called from any number of other threads at the same time, each with its own Scratch.
+ */
+public class TileImageCache
+{
+	private BufferedImage puzzleImage;
+	private int tileSize;
+	private int errMargin;
+	private int cellSize;
+	//Number of rotation variants kept for each tile. Images are keyed by tileIndex*variantCount + rotation step.
+	private int variantCount;
+	private TileAtlas atlas;
+	private BevelCache bevels;
+	private Shape [] tileMasks;
+	//Current rotated mask of each tile
+	private Shape [] rotatedMasks;
+	//Current image of each tile
+	private int [] currentVariant;
+	//Image descriptions, see setTileImage
+	private int [] fromX;
+	private int [] fromY;
+	//Indexed by image key
+	private AffineTransform [] rotations;
+	private int [] variantSteps;
+	private boolean [] described;
+	//Incremented each time an image's description changes, so builds in progress can tell if they are out of date
+	private int [] versions;
+	//Scratch images for drawing
+	private Scratch scratch;
+
+	/**
+	 * @param puzzleImage the image the tiles are cut from
+	 * @param tileCount number of tiles
+	 * @param tileSize tile width and height, including tile margins
+	 * @param errMargin extra space around each tile image
+	 * @param rotationSteps number of rotation steps (see TileManager.getRotationSteps), or 0 if tiles don't rotate in fixed steps
+	 * @param slotCount maximum number of tile images kept at once
+	 * @param bevels light and shadow hints
+	 */
+	public TileImageCache(BufferedImage puzzleImage, int tileCount, int tileSize, int errMargin, int rotationSteps, int slotCount, BevelCache bevels)
+	{
+		this.puzzleImage=puzzleImage;
+		this.tileSize=tileSize;
+		this.errMargin=errMargin;
+		this.bevels=bevels;
+		cellSize=tileSize + errMargin*2;
+		variantCount=rotationSteps<1 ? 1 : rotationSteps;
+		int keyCount=tileCount*variantCount;
+		atlas=new TileAtlas(keyCount,cellSize,slotCount);
+		tileMasks=new Shape[tileCount];
+		rotatedMasks=new Shape[tileCount];
+		currentVariant=new int[tileCount];
+		fromX=new int[tileCount];
+		fromY=new int[tileCount];
+		rotations=new AffineTransform[keyCount];
+		variantSteps=new int[keyCount];
+		described=new boolean[keyCount];
+		versions=new int[keyCount];
+		for(int i=0; i<tileCount; i++)currentVariant[i]=i*variantCount;
+		scratch=new Scratch();
+	}
+
+	/**
+	 * Sets a tile's unrotated shape. This needs to be done before the tile's image is described.
+	 */
+	public void setTileMask(int tileIndex, Shape mask)
+	{
+		tileMasks[tileIndex]=mask;
+	}
+
+	/**
+	 * Describes a tile's image. This should be called for each tile during setup, and when a tile is rotated.
+	 * If the tile rotates in fixed steps and the image for its new step is cached, it is used as is. Otherwise the old image is dropped.
+	 * @param tileIndex tile index
+	 * @param x x coordinate of original tile location
+	 * @param y y coordinate of original tile location
+	 * @param rotation current tile rotation transform, or null
+	 * @param rotationStep the tile's rotation step, or -1 if rotations don't repeat (see BevelCache)
+	 */
+	public void setTileImage(int tileIndex, int x, int y, AffineTransform rotation, int rotationStep)
+	{
+		Shape rMask=getRotatedMask(tileIndex,rotation);
+		synchronized(atlas)
+		{
+			if(x!=fromX[tileIndex] || y!=fromY[tileIndex])
+			{
+				//Every variant comes from the old location
+				for(int key=tileIndex*variantCount; key<(tileIndex+1)*variantCount; key++)
+				{
+					versions[key]++;
+					atlas.release(key);
+				}
+				fromX[tileIndex]=x;
+				fromY[tileIndex]=y;
+			}
+			int key=describe(tileIndex,rotationStep,rotation);
+			currentVariant[tileIndex]=key;
+			rotatedMasks[tileIndex]=rMask;
+		}
+	}
+
+	/**
+	 * Describes one rotation variant of a tile's image, so it can be built ahead of time (see buildVariant).
+	 * Call setTileImage for the tile first. The tile's current image is not changed.
+	 * @param tileIndex tile index
+	 * @param rotationStep the rotation step
+	 * @param rotation rotation transform for that step
+	 */
+	public void setRotationVariant(int tileIndex, int rotationStep, AffineTransform rotation)
+	{
+		synchronized(atlas)
+		{
+			describe(tileIndex,rotationStep,rotation);
+		}
+	}
+
+	/**
+	 * Records the description of an image, dropping the old image if the description has changed.
+	 * @return the image key
+	 */
+	private int describe(int tileIndex, int rotationStep, AffineTransform rotation)
+	{
+		int key=tileIndex*variantCount + (rotationStep<0 ? 0 : rotationStep%variantCount);
+		//Rotations that don't repeat are always treated as new
+		if(rotationStep<0 || !described[key] || !(rotation==null ? rotations[key]==null : rotation.equals(rotations[key])))
+		{
+			rotations[key]=rotation==null ? null : new AffineTransform(rotation);
+			variantSteps[key]=rotationStep;
+			described[key]=true;
+			versions[key]++;
+			atlas.release(key);
+		}
+		return key;
+	}
+
+	/**
+	 * Returns a tile's rotated shape, positioned within its image.
+	 */
+	public Shape getRotatedMask(int tileIndex)
+	{
+		return rotatedMasks[tileIndex];
+	}
+
+	private Shape getRotatedMask(int tileIndex, AffineTransform rotation)
+	{
+		Shape rMask=tileMasks[tileIndex];
+		if(rotation!=null)
+		{
+			AffineTransform maskTransform=new AffineTransform(rotation);
+			maskTransform.translate(errMargin,errMargin);
+			rMask=maskTransform.createTransformedShape(rMask);
+		}
+		return rMask;
+	}
+
+	public int getSlotCount()
+	{
+		return atlas.getSlotCount();
+	}
+
+	/**
+	 * Draws a tile's image, building it first if it isn't stored.
+	 * @param g2d graphics context
+	 * @param tileIndex tile index
+	 * @param bounds where to draw the image. Only the top left bounds.width by bounds.height pixels are drawn.
+	 */
+	public void drawTileImage(Graphics2D g2d, int tileIndex, Rectangle bounds)
+	{
+		int key;
+		synchronized(atlas)
+		{
+			key=currentVariant[tileIndex];
+			int slot=atlas.getSlot(key);
+			if(slot>=0)
+			{
+				drawSlot(g2d,slot,bounds);
+				return;
+			}
+		}
+		buildImage(key,scratch);
+		//The new image is still in the scratch cell, even if another thread has already claimed its slot
+		drawImage(g2d,scratch.cell,0,0,bounds);
+	}
+
+	private void drawSlot(Graphics2D g2d, int slot, Rectangle bounds)
+	{
+		drawImage(g2d,atlas.getPage(slot),atlas.getX(slot),atlas.getY(slot),bounds);
+	}
+
+	private void drawImage(Graphics2D g2d, BufferedImage img, int left, int top, Rectangle bounds)
+	{
+		g2d.drawImage(img,bounds.x,bounds.y,bounds.x+bounds.width,bounds.y+bounds.height,left,top,bounds.width+left,bounds.height+top,null);
+	}
+
+	/**
+	 * Builds a tile's current image and stores it, unless its description changes while it is being built.
+	 * The tile should have been described (see setTileImage) first.
+	 * @param tileIndex tile index
+	 * @param scratch working images - each thread needs its own
+	 */
+	public void build(int tileIndex, Scratch scratch)
+	{
+		int key;
+		synchronized(atlas)
+		{
+			key=currentVariant[tileIndex];
+		}
+		buildImage(key,scratch);
+	}
+
+	/**
+	 * Builds the image for one rotation variant of a tile, if it has been described and isn't already stored.
+	 * @param tileIndex tile index
+	 * @param rotationStep the rotation step
+	 * @param scratch working images - each thread needs its own
+	 */
+	public void buildVariant(int tileIndex, int rotationStep, Scratch scratch)
+	{
+		int key=tileIndex*variantCount + rotationStep%variantCount;
+		synchronized(atlas)
+		{
+			if(!described[key] || atlas.contains(key))return;
+		}
+		buildImage(key,scratch);
+	}
+
+	private void buildImage(int key, Scratch scratch)
+	{
+		int tileIndex=key/variantCount;
+		int x, y, rotationStep, version;
+		AffineTransform rotation;
+		synchronized(atlas)
+		{
+			x=fromX[tileIndex];
+			y=fromY[tileIndex];
+			rotation=rotations[key];
+			rotationStep=variantSteps[key];
+			version=versions[key];
+		}
+		Shape rMask=getRotatedMask(tileIndex,rotation);
+
+		//Draw the tile's image
+		Graphics2D gInt = (Graphics2D)scratch.intermediate.getGraphics();
+		//Highest quality rotation and scaling
+		gInt.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		if(rotation != null) gInt.transform(rotation);
+		int size = cellSize;
+		x -= errMargin;
+		y -= errMargin;
+		gInt.drawImage(puzzleImage,0,0,size,size,x,y,x + size,y + size, null);
+		gInt.setTransform(new AffineTransform());
+
+		//light and shadow hints
+		bevels.drawBevel(gInt,tileIndex,rotationStep,rMask);
+		gInt.dispose();
+
+		//tile shape
+		Graphics2D gCell = (Graphics2D)scratch.cell.getGraphics();
+		gCell.setComposite(AlphaComposite.Clear);
+		gCell.fillRect(0,0,size,size);
+		applyAntialiasedMask(gCell,rMask,0,0);
+		gCell.drawImage(scratch.intermediate,0,0,null);
+		gCell.dispose();
+
+		synchronized(atlas)
+		{
+			if(version==versions[key])
+			{
+				int slot=atlas.allocate(key);
+				BufferedImage page=atlas.getPage(slot);
+				Graphics2D g2d = (Graphics2D)page.getGraphics();
+				g2d.setComposite(AlphaComposite.Src);
+				g2d.drawImage(scratch.cell,atlas.getX(slot),atlas.getY(slot),null);
+				g2d.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Just using shape clipping doesn't apply antialiasing, this gives a smoother result.
+	 * Applies a tileSize by tileSize clip region.
+	 * @param g2d graphics context to apply clip region to.
+	 * @param mask clip region.
+	 * @param left x coordinate of upper left corner.
+	 * @param top y coordinate of upper left corner.
+	 */
+	private void applyAntialiasedMask(Graphics2D g2d,Shape mask,int left,int top)
+	{
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		//Clear the alpha
+		g2d.setComposite(AlphaComposite.Clear);
+		g2d.fillRect(left,top, tileSize, tileSize);
+		//render the clip shape to alpha
+		g2d.setComposite(AlphaComposite.Src);
+		g2d.setColor(Color.WHITE);
+		g2d.fill(mask);
+		g2d.setComposite(AlphaComposite.SrcAtop);
+	}
+
+	/**
+	 * Working images for building one tile at a time - each thread building tiles needs its own.
+	 */
+	public class Scratch
+	{
+		BufferedImage intermediate;
+		BufferedImage cell;
+
+		public Scratch()
+		{
+			intermediate=new BufferedImage(cellSize,cellSize,BufferedImage.TYPE_INT_ARGB);
+			cell=new BufferedImage(cellSize,cellSize,BufferedImage.TYPE_INT_ARGB);
+		}
+	}
+}
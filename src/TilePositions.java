@@ -0,0 +1,295 @@
+/**
+ *      TilePositions.java
+ *
+ *      Copyright 2010 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created so that moving a connected group doesn't have to touch every tile
+ *  - Added per-group bounding boxes and drag allowances, kept relative to the group origin so they survive moves
+ *  - Added getRevision, so images of a group (see GroupSpriteCache) can tell when the group's layout has changed
+ *  - getGroupBounds reads tile bounds from TileStore. Added getRoot.
+ */
+
+import java.awt.Rectangle;
+
+/**
+ * Tile positions, stored relative to the connected group each tile belongs to.
+ * Each group has an origin, kept at the group's root (see ConnectedSet.getRoot), and each tile an offset from that origin.
+ * Moving a whole group only changes its origin; absolute positions are worked out when they are asked for.
+ * Groups must be connected through this class (see connect) so that the offsets stay consistent.
+ *
+ * Each group's bounding box is cached relative to its origin as well, so it is only worked out again when a tile in the group
+ * is moved on its own (rotation, realignment) or the group is rotated. Connecting two groups merges their boxes.
+ */
+public class TilePositions
+{
+	private ConnectedSet tileSet;
+	//Tile positions relative to their group's origin
+	private int [] offsetX;
+	private int [] offsetY;
+	//Group origins, indexed by root
+	private int [] originX;
+	private int [] originY;
+	//Group bounding boxes and drag allowances relative to the origin, indexed by root
+	private Rectangle [] bounds;
+	private boolean [] boundsValid;
+	private Rectangle [] dragAllowance;
+	private boolean [] dragAllowanceValid;
+	//Layout revision of each group, indexed by root - renumbered whenever a tile in the group moves on its own or groups are connected
+	private int [] revisions;
+	private int revisionCount=0;
+
+	/**
+	 * All tiles start out at 0,0.
+	 * @param tileSet the connected set defining the groups
+	 * @param tileCount number of tiles
+	 */
+	public TilePositions(ConnectedSet tileSet, int tileCount)
+	{
+		this.tileSet=tileSet;
+		offsetX=new int[tileCount];
+		offsetY=new int[tileCount];
+		originX=new int[tileCount];
+		originY=new int[tileCount];
+		bounds=new Rectangle[tileCount];
+		boundsValid=new boolean[tileCount];
+		dragAllowance=new Rectangle[tileCount];
+		dragAllowanceValid=new boolean[tileCount];
+		revisions=new int[tileCount];
+	}
+
+	public int getX(int tileIndex)
+	{
+		return originX[tileSet.getRoot(tileIndex)]+offsetX[tileIndex];
+	}
+
+	public int getY(int tileIndex)
+	{
+		return originY[tileSet.getRoot(tileIndex)]+offsetY[tileIndex];
+	}
+
+	/**
+	 * Moves a single tile. The rest of its group stays put.
+	 * @param tileIndex the tile to move
+	 * @param x new x coordinate
+	 * @param y new y coordinate
+	 */
+	public void moveTile(int tileIndex, int x, int y)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		offsetX[tileIndex]=x-originX[root];
+		offsetY[tileIndex]=y-originY[root];
+		boundsValid[root]=false;
+		dragAllowanceValid[root]=false;
+		revisions[root]=++revisionCount;
+	}
+
+	/**
+	 * Discards the cached bounds of a group. Call this when a tile's shape changes, such as after a rotation.
+	 * @param tileIndex any tile in the group
+	 */
+	public void invalidateBounds(int tileIndex)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		boundsValid[root]=false;
+		dragAllowanceValid[root]=false;
+		revisions[root]=++revisionCount;
+	}
+
+	/**
+	 * Returns the root of a tile's connected group, from the connected set positions are kept for.
+	 */
+	public int getRoot(int tileIndex)
+	{
+		return tileSet.getRoot(tileIndex);
+	}
+
+	/**
+	 * Returns the layout revision of a connected group. It changes whenever a tile in the group is moved on its own,
+	 * the group's bounds are invalidated, or the group is connected to another one, but not when the whole group is moved.
+	 * Revisions are never reused, so a stale revision never matches, even for a different group.
+	 * @param tileIndex any tile in the group
+	 */
+	public int getRevision(int tileIndex)
+	{
+		return revisions[tileSet.getRoot(tileIndex)];
+	}
+
+	/**
+	 * Returns the bounding box of a connected group (the union of MouseSensetiveTile.getBounds for its tiles).
+	 * The group is only walked if its bounds are not cached.
+	 * @param tileIndex any tile in the group
+	 * @param store where tile bounds are kept
+	 * @param result storage for the return value, or null
+	 */
+	public Rectangle getGroupBounds(int tileIndex, TileStore store, Rectangle result)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		if(!boundsValid[root])
+		{
+			if(bounds[root]==null)bounds[root]=new Rectangle();
+			boolean initialized=false;
+			tileSet.setGroup(root);
+			for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext())
+			{
+				Rectangle tileBounds=store.getBounds(i,result);
+				result=tileBounds;
+				if(initialized)
+				{
+					bounds[root].add(tileBounds);
+				}
+				else
+				{
+					bounds[root].setBounds(tileBounds);
+					initialized=true;
+				}
+			}
+			bounds[root].translate(-originX[root],-originY[root]);
+			boundsValid[root]=true;
+		}
+		if(result==null)result=new Rectangle();
+		result.setBounds(bounds[root]);
+		result.translate(originX[root],originY[root]);
+		return result;
+	}
+
+	/**
+	 * Returns a group's cached drag allowance (see JigsawHandler.getDragAllowance).
+	 * @param tileIndex any tile in the group
+	 * @param result storage for the return value
+	 * @return result, or null if the allowance isn't cached
+	 */
+	public Rectangle getDragAllowance(int tileIndex, Rectangle result)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		if(dragAllowanceValid[root])
+		{
+			result.setBounds(dragAllowance[root]);
+			result.translate(originX[root],originY[root]);
+		}
+		else result=null;
+		return result;
+	}
+
+	/**
+	 * Caches a group's drag allowance. It moves with the group until a tile in the group is moved on its own.
+	 * @param tileIndex any tile in the group
+	 * @param allowance the allowance at the group's current position
+	 */
+	public void setDragAllowance(int tileIndex, Rectangle allowance)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		if(dragAllowance[root]==null)dragAllowance[root]=new Rectangle();
+		dragAllowance[root].setBounds(allowance);
+		dragAllowance[root].translate(-originX[root],-originY[root]);
+		dragAllowanceValid[root]=true;
+	}
+
+	/**
+	 * Moves a whole connected group.
+	 * @param tileIndex any tile in the group
+	 * @param dX distance to move horizontally
+	 * @param dY distance to move vertically
+	 */
+	public void moveGroup(int tileIndex, int dX, int dY)
+	{
+		int root=tileSet.getRoot(tileIndex);
+		originX[root]+=dX;
+		originY[root]+=dY;
+	}
+
+	/**
+	 * Connects two groups (see ConnectedSet.connect), keeping every tile where it is.
+	 * The smaller group's offsets are rebased onto the larger group's origin.
+	 * @param i element index
+	 * @param j element index
+	 * @return number of elements in the resulting group.
+	 */
+	public int connect(int i, int j)
+	{
+		int large=tileSet.getRoot(i);
+		int small=tileSet.getRoot(j);
+		boolean merged=large!=small;
+		if(merged)
+		{
+			if(tileSet.getGroupSize(large)<tileSet.getGroupSize(small))
+			{
+				int t=large;
+				large=small;
+				small=t;
+			}
+			int dX=originX[small]-originX[large];
+			int dY=originY[small]-originY[large];
+			tileSet.setGroup(small);
+			for(int k=tileSet.getNext(); k>=0; k=tileSet.getNext())
+			{
+				offsetX[k]+=dX;
+				offsetY[k]+=dY;
+			}
+			//Merge the bounding boxes
+			if(boundsValid[large] && boundsValid[small])
+			{
+				bounds[small].translate(dX,dY);
+				bounds[large].add(bounds[small]);
+			}
+			else boundsValid[large]=false;
+		}
+		int result=tileSet.connect(i,j);
+		//Both groups are now relative to the same origin, whichever root was kept
+		int root=tileSet.getRoot(i);
+		if(merged && root!=large)
+		{
+			originX[root]=originX[large];
+			originY[root]=originY[large];
+			Rectangle t=bounds[root];
+			bounds[root]=bounds[large];
+			bounds[large]=t;
+			boundsValid[root]=boundsValid[large];
+		}
+		//The allowance depends on which tiles are at the edges - it has to be worked out again
+		dragAllowanceValid[root]=false;
+		if(merged)revisions[root]=++revisionCount;
+		return result;
+	}
+
+	/**
+	 * Switches to a different connected set, such as one that has just been loaded, keeping every tile where it is.
+	 * @param tileSet the new connected set
+	 */
+	public void setConnectedSet(ConnectedSet tileSet)
+	{
+		for(int i=0; i<offsetX.length; i++)
+		{
+			int root=this.tileSet.getRoot(i);
+			offsetX[i]+=originX[root];
+			offsetY[i]+=originY[root];
+		}
+		//Absolute positions are now in the offsets - start every group at 0,0
+		for(int i=0; i<offsetX.length; i++)
+		{
+			originX[i]=0;
+			originY[i]=0;
+			boundsValid[i]=false;
+			dragAllowanceValid[i]=false;
+			revisions[i]=++revisionCount;
+		}
+		this.tileSet=tileSet;
+	}
+}
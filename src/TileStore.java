@@ -0,0 +1,273 @@
+/**
+ *      TileStore.java
+ *
+ *      Copyright 2010 - 2012 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created to keep per-tile state in primitive arrays instead of in each MouseSensetiveTile
+ *  - getShape keeps each tile's positioned shape, and only builds a new one after the tile is moved or rotated
+ */
+
+import hulka.event.ShapeOutline;
+import hulka.tilemanager.TileManager;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+
+/**
+ * Per-tile state, one array entry per tile, indexed by tile index.
+ * Z order and layer are kept here. Positions are kept by TilePositions, rotations by the TileManager and groups by the
+ * ConnectedSet; they are read through here so the handler, the shape indexes (through MouseSensetiveTile) and the save code
+ * all see the same state.
+ * The bounding box and flattened outline of each tile's rotated mask are cached here as well, relative to the tile position,
+ * and only worked out again after the tile is rotated. The mask at the tile's position on the board is kept too, until the tile moves or rotates.
+ * MouseSensetiveTile is only a view onto one entry, so tiles carry no geometry of their own.
+ */
+public class TileStore
+{
+	private TileManager tileManager;
+	private TilePositions positions;
+	private int errMargin;
+	//Offset from the tile position to its mask's origin
+	private int maskOffset;
+	private int [] zOrders;
+	private int [] layers;
+	//Mask bounding boxes relative to the tile position, including errMargin - valid while boundsRotation matches the tile's rotation count
+	private int [] boundsX;
+	private int [] boundsY;
+	private int [] boundsWidth;
+	private int [] boundsHeight;
+	private int [] boundsRotation;
+	//Flattened masks relative to the tile position, built as needed - valid while outlineRotation matches the tile's rotation count
+	private ShapeOutline [] outlines;
+	private int [] outlineRotation;
+	//Masks at the tile positions, built as needed - valid while shapeX, shapeY and shapeRotation match the tile
+	private Shape [] shapes;
+	private int [] shapeX;
+	private int [] shapeY;
+	private int [] shapeRotation;
+	private AffineTransform shapeTransform=new AffineTransform();
+	private MouseSensetiveTile [] tiles;
+
+	/**
+	 * All tiles start out on layer 0.
+	 * @param manager the tile manager, which keeps the tile masks and rotations
+	 * @param positions where tile positions are kept
+	 * @param errMargin extra space around each tile
+	 */
+	public TileStore(TileManager manager, TilePositions positions, int errMargin)
+	{
+		int tileCount=manager.getTileCount();
+		this.tileManager=manager;
+		this.positions=positions;
+		this.errMargin=errMargin;
+		maskOffset=manager.getTileMargin()+errMargin;
+		zOrders=new int[tileCount];
+		layers=new int[tileCount];
+		boundsX=new int[tileCount];
+		boundsY=new int[tileCount];
+		boundsWidth=new int[tileCount];
+		boundsHeight=new int[tileCount];
+		boundsRotation=new int[tileCount];
+		outlines=new ShapeOutline[tileCount];
+		outlineRotation=new int[tileCount];
+		shapes=new Shape[tileCount];
+		shapeX=new int[tileCount];
+		shapeY=new int[tileCount];
+		shapeRotation=new int[tileCount];
+		tiles=new MouseSensetiveTile[tileCount];
+		for(int i=0; i<tileCount; i++)
+		{
+			boundsRotation[i]=-1;
+			outlineRotation[i]=-1;
+		}
+	}
+
+	public int getTileCount()
+	{
+		return zOrders.length;
+	}
+
+	/**
+	 * Returns a tile's view, for registering with a MouseSensetiveShapeManager. It is created the first time it is asked for.
+	 */
+	public MouseSensetiveTile getTile(int tileIndex)
+	{
+		if(tiles[tileIndex]==null)tiles[tileIndex]=new MouseSensetiveTile(this,tileManager,tileIndex);
+		return tiles[tileIndex];
+	}
+
+	public TilePositions getPositions()
+	{
+		return positions;
+	}
+
+	public int getX(int tileIndex)
+	{
+		return positions.getX(tileIndex);
+	}
+
+	public int getY(int tileIndex)
+	{
+		return positions.getY(tileIndex);
+	}
+
+	/**
+	 * Moves one tile. To move its whole connected group, use TilePositions.moveGroup.
+	 */
+	public void moveTile(int tileIndex, int x, int y)
+	{
+		positions.moveTile(tileIndex,x,y);
+	}
+
+	public int getRotation(int tileIndex)
+	{
+		return tileManager.getRotationCount(tileIndex);
+	}
+
+	/**
+	 * Returns the root of the tile's connected group (see ConnectedSet.getRoot).
+	 */
+	public int getGroup(int tileIndex)
+	{
+		return positions.getRoot(tileIndex);
+	}
+
+	public int getZOrder(int tileIndex)
+	{
+		return zOrders[tileIndex];
+	}
+
+	/**
+	 * The tile must not be registered with a MouseSensetiveShapeManager while its z order changes,
+	 * unless the order between all registered tiles stays the same (see ShapeIndex).
+	 */
+	public void setZOrder(int tileIndex, int zOrder)
+	{
+		zOrders[tileIndex]=zOrder;
+	}
+
+	public int getLayer(int tileIndex)
+	{
+		return layers[tileIndex];
+	}
+
+	public void setLayer(int tileIndex, int layer)
+	{
+		layers[tileIndex]=layer;
+	}
+
+	/**
+	 * Returns every tile's layer, indexed by tile index, for saving. The array belongs to the store.
+	 */
+	public int [] getLayers()
+	{
+		return layers;
+	}
+
+	/**
+	 * Sets every tile's layer, as when loading.
+	 * @param layers layers indexed by tile index
+	 */
+	public void setLayers(int [] layers)
+	{
+		System.arraycopy(layers,0,this.layers,0,this.layers.length);
+	}
+
+	/**
+	 * Returns the tile's rotated mask, relative to its mask origin (see getMaskOffset). The shape belongs to the tile manager's cache.
+	 */
+	public Shape getMask(int tileIndex)
+	{
+		return tileManager.getTileMask(tileIndex,tileManager.getRotationCount(tileIndex));
+	}
+
+	/**
+	 * Returns the offset from a tile's position to its mask's origin.
+	 */
+	public int getMaskOffset()
+	{
+		return maskOffset;
+	}
+
+	/**
+	 * Checks whether a point falls inside a tile's mask.
+	 */
+	public boolean contains(int tileIndex, int x, int y)
+	{
+		return getMask(tileIndex).contains(x - getX(tileIndex) - maskOffset, y - getY(tileIndex) - maskOffset);
+	}
+
+	/**
+	 * Returns the tile's bounding box, including errMargin.
+	 * @param result storage for the return value, or null
+	 */
+	public Rectangle getBounds(int tileIndex, Rectangle result)
+	{
+		int rotation=tileManager.getRotationCount(tileIndex);
+		if(boundsRotation[tileIndex]!=rotation)
+		{
+			Rectangle maskBounds=getMask(tileIndex).getBounds();
+			boundsX[tileIndex]=maskBounds.x + maskOffset - errMargin;
+			boundsY[tileIndex]=maskBounds.y + maskOffset - errMargin;
+			boundsWidth[tileIndex]=maskBounds.width + errMargin*2;
+			boundsHeight[tileIndex]=maskBounds.height + errMargin*2;
+			boundsRotation[tileIndex]=rotation;
+		}
+		if(result==null)result=new Rectangle();
+		result.setBounds(boundsX[tileIndex]+getX(tileIndex),boundsY[tileIndex]+getY(tileIndex),boundsWidth[tileIndex],boundsHeight[tileIndex]);
+		return result;
+	}
+
+	/**
+	 * Returns the tile's mask flattened into polygons, relative to the tile position.
+	 */
+	public ShapeOutline getOutline(int tileIndex)
+	{
+		int rotation=tileManager.getRotationCount(tileIndex);
+		if(outlines[tileIndex]==null || outlineRotation[tileIndex]!=rotation)
+		{
+			outlines[tileIndex]=new ShapeOutline(AffineTransform.getTranslateInstance(maskOffset,maskOffset).createTransformedShape(getMask(tileIndex)));
+			outlineRotation[tileIndex]=rotation;
+		}
+		return outlines[tileIndex];
+	}
+
+	/**
+	 * Returns the tile's mask at its position on the board. The shape belongs to the store and must not be modified;
+	 * it is replaced, not changed, when the tile moves or rotates.
+	 */
+	public Shape getShape(int tileIndex)
+	{
+		int x=getX(tileIndex);
+		int y=getY(tileIndex);
+		int rotation=tileManager.getRotationCount(tileIndex);
+		if(shapes[tileIndex]==null || shapeX[tileIndex]!=x || shapeY[tileIndex]!=y || shapeRotation[tileIndex]!=rotation)
+		{
+			shapeTransform.setToTranslation(x+maskOffset,y+maskOffset);
+			shapes[tileIndex]=new Path2D.Float(getMask(tileIndex),shapeTransform);
+			shapeX[tileIndex]=x;
+			shapeY[tileIndex]=y;
+			shapeRotation[tileIndex]=rotation;
+		}
+		return shapes[tileIndex];
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ *      ZOrderManager.java
+ *
+ *      Copyright 2010 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created to replace the linear shifting of zIndices in ConnectedSet.removeConnectedElements and insertConnectedElements
+ *  - Z orders are written to TileStore instead of each MouseSensetiveTile
+ *  - Keys are kept in a treap of int arrays instead of a TreeMap, so picking up and dropping groups doesn't box Integers
+ */
+
+/**
+ * Keeps the connected tile groups on the board in z order.
+ * Groups are ordered by size, smaller groups on top. Among groups of the same size, the most recently dropped group is on top.
+ * Each group has a unique key built from its size and a drop sequence number, and every tile's z order is set to its group's key,
+ * so placing or lifting a group costs O(log g) for g groups on the board, plus a pass over the group's own tiles.
+ * Keys are kept in a treap (a binary search tree balanced by random node priorities) built from int arrays, so nothing is boxed or allocated.
+ * Keys are always larger than the number of tiles, so tiles lifted off the board (the selection) can use z orders 0 to n-1 to stay on top.
+ */
+public class ZOrderManager
+{
+	//Treap nodes, one per group on the board - there can be no more groups than tiles. Smaller keys (higher groups) are to the left.
+	private int [] keys;
+	//One tile of each node's group
+	private int [] members;
+	private int [] left;
+	private int [] right;
+	//Parents have higher priorities than their children
+	private int [] priorities;
+	private int root=-1;
+	//Unused nodes
+	private int [] freeNodes;
+	private int freeCount;
+	private int groupCount=0;
+	//Random number state for node priorities (xorshift)
+	private int seed=0x2545F491;
+	//Storage for walking the tree in order
+	private int [] stack;
+	//Number of sequence numbers available before the keys have to be renumbered
+	private int sequenceRange;
+	private int nextSequence=0;
+	//Number of tiles currently on the board
+	private int boardTileCount=0;
+	private int tileCount;
+
+	public ZOrderManager(int tileCount)
+	{
+		this.tileCount=tileCount;
+		sequenceRange=Integer.MAX_VALUE/(tileCount+1);
+		keys=new int[tileCount];
+		members=new int[tileCount];
+		left=new int[tileCount];
+		right=new int[tileCount];
+		priorities=new int[tileCount];
+		freeNodes=new int[tileCount];
+		stack=new int[tileCount];
+		clear();
+	}
+
+	/**
+	 * Places a group on the board: on top of groups of the same or larger size, underneath smaller groups.
+	 * Sets the z order of each tile in the group.
+	 * @param tileIndex any tile in the group
+	 * @param tileSet the ConnectedSet defining the group
+	 * @param store where tile z orders are kept
+	 */
+	public void insertGroup(int tileIndex, ConnectedSet tileSet, TileStore store)
+	{
+		if(nextSequence>=sequenceRange)renumber(tileSet,store);
+		int size=tileSet.getGroupSize(tileIndex);
+		int key=getKey(size,nextSequence++);
+		int node=freeNodes[--freeCount];
+		keys[node]=key;
+		members[node]=tileIndex;
+		left[node]=-1;
+		right[node]=-1;
+		seed^=seed<<13;
+		seed^=seed>>>17;
+		seed^=seed<<5;
+		priorities[node]=seed;
+		root=insert(root,node);
+		groupCount++;
+		boardTileCount+=size;
+		setZOrder(tileIndex,tileSet,store,key);
+	}
+
+	/**
+	 * Lifts a group off the board. Tiles in the group keep their z order until it is changed by the caller.
+	 * @param tileIndex any tile in the group
+	 * @param tileSet the ConnectedSet defining the group
+	 * @param store where tile z orders are kept
+	 */
+	public void removeGroup(int tileIndex, ConnectedSet tileSet, TileStore store)
+	{
+		//Every tile in a group on the board holds the group's key
+		int key=store.getZOrder(tileIndex);
+		int node=root;
+		while(node>=0 && keys[node]!=key) node=key<keys[node]?left[node]:right[node];
+		if(node>=0 && tileSet.isConnected(members[node],tileIndex))
+		{
+			root=remove(root,key);
+			freeNodes[freeCount++]=node;
+			groupCount--;
+			boardTileCount-=tileSet.getGroupSize(tileIndex);
+		}
+	}
+
+	/**
+	 * Lists the tiles on the board in z order, top first, in the format of the old zIndices array.
+	 * Positions for tiles not on the board come first and are set to -1.
+	 * @param tileSet the ConnectedSet defining the groups
+	 * @param result storage for the list, or null. Must have room for every tile.
+	 * @return the list
+	 */
+	public int [] getZIndices(ConnectedSet tileSet, int [] result)
+	{
+		if(result==null || result.length<tileCount) result=new int[tileCount];
+		int position=0;
+		for(; position<tileCount-boardTileCount; position++) result[position]=-1;
+		int depth=0;
+		for(int node=root; node>=0 || depth>0;)
+		{
+			if(node>=0)
+			{
+				stack[depth++]=node;
+				node=left[node];
+			}
+			else
+			{
+				node=stack[--depth];
+				tileSet.setGroup(members[node]);
+				for(int j=tileSet.getNext(); j>=0; j=tileSet.getNext()) result[position++]=j;
+				node=right[node];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Clears the board and places every group on it, keeping the order given by a zIndices list (top first).
+	 * Groups missing from the list are placed on top.
+	 * @param zIndices tile indices in z order, as returned by getZIndices. Negative values are ignored.
+	 * @param tileSet the ConnectedSet defining the groups
+	 * @param store where tile z orders are kept
+	 */
+	public void load(int [] zIndices, ConnectedSet tileSet, TileStore store)
+	{
+		clear();
+		nextSequence=0;
+		boardTileCount=0;
+		boolean [] placed=new boolean[tileCount];
+		//Most recently placed groups end up on top, so start at the bottom
+		for(int i=zIndices.length-1; i>=0; i--)
+		{
+			int index=zIndices[i];
+			if(index>=0 && index<tileCount && !placed[tileSet.getRoot(index)])
+			{
+				placed[tileSet.getRoot(index)]=true;
+				insertGroup(index,tileSet,store);
+			}
+		}
+		for(int i=0; i<tileCount; i++)
+		{
+			if(!placed[tileSet.getRoot(i)])
+			{
+				placed[tileSet.getRoot(i)]=true;
+				insertGroup(i,tileSet,store);
+			}
+		}
+	}
+
+	/**
+	 * Empties the tree.
+	 */
+	private void clear()
+	{
+		root=-1;
+		groupCount=0;
+		freeCount=tileCount;
+		for(int i=0; i<tileCount; i++) freeNodes[i]=i;
+	}
+
+	/**
+	 * Adds a node to a subtree.
+	 * @return the subtree's new root
+	 */
+	private int insert(int subtree, int node)
+	{
+		if(subtree<0) return node;
+		if(keys[node]<keys[subtree])
+		{
+			left[subtree]=insert(left[subtree],node);
+			if(priorities[left[subtree]]>priorities[subtree])
+			{
+				//Rotate right
+				int top=left[subtree];
+				left[subtree]=right[top];
+				right[top]=subtree;
+				return top;
+			}
+		}
+		else
+		{
+			right[subtree]=insert(right[subtree],node);
+			if(priorities[right[subtree]]>priorities[subtree])
+			{
+				//Rotate left
+				int top=right[subtree];
+				right[subtree]=left[top];
+				left[top]=subtree;
+				return top;
+			}
+		}
+		return subtree;
+	}
+
+	/**
+	 * Removes the node with the given key from a subtree. The key must be in the subtree.
+	 * @return the subtree's new root
+	 */
+	private int remove(int subtree, int key)
+	{
+		if(key<keys[subtree]) left[subtree]=remove(left[subtree],key);
+		else if(key>keys[subtree]) right[subtree]=remove(right[subtree],key);
+		else return merge(left[subtree],right[subtree]);
+		return subtree;
+	}
+
+	/**
+	 * Joins two subtrees, where every key in the first is smaller than every key in the second.
+	 * @return the joined subtree's root
+	 */
+	private int merge(int first, int second)
+	{
+		if(first<0) return second;
+		if(second<0) return first;
+		if(priorities[first]>priorities[second])
+		{
+			right[first]=merge(right[first],second);
+			return first;
+		}
+		left[second]=merge(first,left[second]);
+		return second;
+	}
+
+	/**
+	 * Smaller keys are on top.
+	 */
+	private int getKey(int size, int sequence)
+	{
+		return size*sequenceRange + sequenceRange - 1 - sequence;
+	}
+
+	private void setZOrder(int tileIndex, ConnectedSet tileSet, TileStore store, int key)
+	{
+		tileSet.setGroup(tileIndex);
+		for(int i=tileSet.getNext(); i>=0; i=tileSet.getNext()) store.setZOrder(i,key);
+	}
+
+	/**
+	 * Reassigns sequence numbers once they run out, keeping the current order.
+	 * Tiles on the board stay registered with the shape indexes and pick buffers while their z orders are rewritten. This is
+	 * allowed by the ShapeIndex contract because the order between groups is unchanged, and keys stay above the z orders used
+	 * by the selection.
+	 */
+	private void renumber(ConnectedSet tileSet, TileStore store)
+	{
+		//Later sequence numbers go on top, so number from the top down, in order.
+		//The new keys keep the same order, so they can be written into the tree in place.
+		int position=0;
+		int depth=0;
+		for(int node=root; node>=0 || depth>0;)
+		{
+			if(node>=0)
+			{
+				stack[depth++]=node;
+				node=left[node];
+			}
+			else
+			{
+				node=stack[--depth];
+				keys[node]=getKey(keys[node]/sequenceRange,groupCount-1-position);
+				setZOrder(members[node],tileSet,store,keys[node]);
+				position++;
+				node=right[node];
+			}
+		}
+		nextSequence=groupCount;
+	}
+}
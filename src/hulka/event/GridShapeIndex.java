@@ -0,0 +1,448 @@
+/**
+ *      GridShapeIndex.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package hulka.event;
+import java.util.ArrayList;
+
+
+/**
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ *
+ * A uniform grid spatial hash. <br>
+ *
+ * The plane is divided into square cells of a fixed size, and each cell is
+ * hashed into one of a fixed number of buckets. A shape is listed in the
+ * bucket of every cell its bounding box touches. With the cell size close
+ * to the typical shape size, a shape touches at most four cells, so adding,
+ * removing and moving a shape costs O(1) amortized regardless of how many
+ * shapes are registered. <br>
+ *
+ * Unrelated cells may share a bucket, so query results are always checked
+ * against the shapes' bounding boxes.
+ */
+
+public class GridShapeIndex implements ShapeIndex
+{
+    private int cellSize;
+    //Shape slots for each bucket - a shape is listed once for each cell it touches
+    private int [][] buckets;
+    private int [] bucketSizes;
+    private int bucketMask;
+    //Registered shapes, indexed by slot
+    private MouseSensetiveShape [] shapes;
+    private int shapeCount;
+    //Cells covered by each slot - recorded when the shape is added so removal visits the same buckets
+    private int [] cellLeft;
+    private int [] cellTop;
+    private int [] cellRight;
+    private int [] cellBottom;
+    //Generation stamps - used to skip shapes that have already been seen during a query
+    private int [] marks;
+    private int generation;
+
+    /**
+     * @param cellSize width and height of a grid cell, this should be close to the size of a typical shape.
+     */
+    public GridShapeIndex(int cellSize)
+    {
+        this(cellSize, 1024);
+    }
+
+    /**
+     * @param cellSize width and height of a grid cell, this should be close to the size of a typical shape.
+     * @param bucketCount initial number of hash buckets, rounded up to a power of two. The table grows as shapes are added.
+     */
+    public GridShapeIndex(int cellSize, int bucketCount)
+    {
+        this.cellSize = cellSize < 1 ? 1 : cellSize;
+        int size = 16;
+        while(size < bucketCount) size <<= 1;
+        buckets = new int[size][];
+        bucketSizes = new int[size];
+        bucketMask = size - 1;
+        shapes = new MouseSensetiveShape[16];
+        cellLeft = new int[16];
+        cellTop = new int[16];
+        cellRight = new int[16];
+        cellBottom = new int[16];
+        marks = new int[16];
+        shapeCount = 0;
+        generation = 0;
+    }
+
+    public void addShape(MouseSensetiveShape shape)
+    {
+        if(containsShape(shape)) return;
+        if(shapeCount == shapes.length) growSlots();
+        int slot = assignSlot(shape);
+        if(shapeCount > buckets.length)
+        {
+            //Keep the buckets short - this also lists the new shape
+            rehash(buckets.length * 2);
+        }
+        else
+        {
+            link(slot);
+        }
+    }
+
+    public void addShapes(MouseSensetiveShape [] added, int count)
+    {
+        //Make room for the whole batch up front, so the slot arrays and the table grow at most once
+        while(shapeCount + count > shapes.length) growSlots();
+        int bucketCount = buckets.length;
+        while(shapeCount + count > bucketCount) bucketCount *= 2;
+        if(bucketCount != buckets.length) rehash(bucketCount);
+        for(int i = 0; i < count; i++)
+        {
+            if(!containsShape(added[i])) link(assignSlot(added[i]));
+        }
+    }
+
+    public void removeShapes(MouseSensetiveShape [] removed, int count)
+    {
+        //Removal is already O(1) per shape
+        for(int i = 0; i < count; i++) removeShape(removed[i]);
+    }
+
+    /**
+     * Gives a shape the next free slot and records the cells it covers. The caller makes sure there is room, and links the slot.
+     * @return the slot
+     */
+    private int assignSlot(MouseSensetiveShape shape)
+    {
+        int slot = shapeCount;
+        shapeCount ++;
+        shapes[slot] = shape;
+        shape.slot = slot;
+        marks[slot] = generation;
+        cellLeft[slot] = cell(shape.getX());
+        cellTop[slot] = cell(shape.getY());
+        cellRight[slot] = cell(shape.getX() + shape.getWidth());
+        cellBottom[slot] = cell(shape.getY() + shape.getHeight());
+        return slot;
+    }
+
+    public void removeShape(MouseSensetiveShape shape)
+    {
+        int slot = shape.slot;
+        if(slot < 0 || slot >= shapeCount || shapes[slot] != shape) return;
+        unlink(slot);
+        shape.slot = -1;
+        //Move the last shape into the empty slot
+        int last = shapeCount - 1;
+        if(slot != last)
+        {
+            for(int cy = cellTop[last]; cy <= cellBottom[last]; cy++)
+            {
+                for(int cx = cellLeft[last]; cx <= cellRight[last]; cx++)
+                {
+                    int bucket = hash(cx, cy);
+                    int [] list = buckets[bucket];
+                    int i = 0;
+                    while(list[i] != last) i++;
+                    list[i] = slot;
+                }
+            }
+            shapes[slot] = shapes[last];
+            shapes[slot].slot = slot;
+            cellLeft[slot] = cellLeft[last];
+            cellTop[slot] = cellTop[last];
+            cellRight[slot] = cellRight[last];
+            cellBottom[slot] = cellBottom[last];
+            marks[slot] = marks[last];
+        }
+        shapes[last] = null;
+        shapeCount --;
+    }
+
+    public boolean containsShape(MouseSensetiveShape shape)
+    {
+        return shape.slot >= 0 && shape.slot < shapeCount && shapes[shape.slot] == shape;
+    }
+
+    public ArrayList<MouseSensetiveShape> getIntersectingShapes(int x1, int y1, int x2, int y2)
+    {
+        ArrayList<MouseSensetiveShape> result = new ArrayList<MouseSensetiveShape>();
+        int left = cell(x1);
+        int top = cell(y1);
+        int right = cell(x2);
+        int bottom = cell(y2);
+        if((long)(right - left + 1) * (bottom - top + 1) >= shapeCount)
+        {
+            //Large query - checking every shape is cheaper than visiting every cell
+            for(int slot = 0; slot < shapeCount; slot++)
+            {
+                if(intersects(shapes[slot], x1, y1, x2, y2)) result.add(shapes[slot]);
+            }
+        }
+        else
+        {
+            nextGeneration();
+            for(int cy = top; cy <= bottom; cy++)
+            {
+                for(int cx = left; cx <= right; cx++)
+                {
+                    int bucket = hash(cx, cy);
+                    int [] list = buckets[bucket];
+                    for(int i = 0; i < bucketSizes[bucket]; i++)
+                    {
+                        int slot = list[i];
+                        if(marks[slot] != generation)
+                        {
+                            marks[slot] = generation;
+                            if(intersects(shapes[slot], x1, y1, x2, y2)) result.add(shapes[slot]);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getIntersectingShapes(int x1, int y1, int x2, int y2, int [] result)
+    {
+        int count = 0;
+        int left = cell(x1);
+        int top = cell(y1);
+        int right = cell(x2);
+        int bottom = cell(y2);
+        if((long)(right - left + 1) * (bottom - top + 1) >= shapeCount)
+        {
+            for(int slot = 0; slot < shapeCount; slot++)
+            {
+                if(intersects(shapes[slot], x1, y1, x2, y2)) result[count++] = slot;
+            }
+        }
+        else
+        {
+            nextGeneration();
+            for(int cy = top; cy <= bottom; cy++)
+            {
+                for(int cx = left; cx <= right; cx++)
+                {
+                    int bucket = hash(cx, cy);
+                    int [] list = buckets[bucket];
+                    for(int i = 0; i < bucketSizes[bucket]; i++)
+                    {
+                        int slot = list[i];
+                        if(marks[slot] != generation)
+                        {
+                            marks[slot] = generation;
+                            if(intersects(shapes[slot], x1, y1, x2, y2)) result[count++] = slot;
+                        }
+                    }
+                }
+            }
+        }
+        ZOrderSort.sort(result, count, shapes);
+        ZOrderSort.toShapeIndices(result, count, shapes);
+        return count;
+    }
+
+    public MouseSensetiveShape [] getShapesAt(int x, int y)
+    {
+        MouseSensetiveShape [] result = null;
+        int bucket = hash(cell(x), cell(y));
+        int [] list = buckets[bucket];
+        int count = 0;
+        //A shape covering several cells that hash to this bucket is listed more than once
+        nextGeneration();
+        for(int i = 0; i < bucketSizes[bucket]; i++)
+        {
+            int slot = list[i];
+            if(marks[slot] != generation)
+            {
+                marks[slot] = generation;
+                if(intersects(shapes[slot], x, y, x, y)) count ++;
+            }
+        }
+        if(count > 0)
+        {
+            result = new MouseSensetiveShape[count];
+            count = 0;
+            nextGeneration();
+            for(int i = 0; i < bucketSizes[bucket]; i++)
+            {
+                int slot = list[i];
+                if(marks[slot] == generation) continue;
+                marks[slot] = generation;
+                MouseSensetiveShape shape = shapes[slot];
+                if(intersects(shape, x, y, x, y))
+                {
+                    //Insertion sort by z order - there will only be a few of these
+                    int j = count;
+                    for(; j > 0 && result[j - 1].compareTo(shape) > 0; j--) result[j] = result[j - 1];
+                    result[j] = shape;
+                    count ++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public MouseSensetiveShape getTopmostAt(int x, int y, ShapeFilter filter)
+    {
+        int bucket = hash(cell(x), cell(y));
+        int [] list = buckets[bucket];
+        int size = bucketSizes[bucket];
+        //Buckets aren't sorted, so pick out the next shape in z order each time round - there will only be a few of these.
+        //Shapes in a group share a z order, so ties are broken by slot.
+        int lastZ = Integer.MIN_VALUE;
+        int lastSlot = -1;
+        while(true)
+        {
+            int nextSlot = -1;
+            int nextZ = 0;
+            for(int i = 0; i < size; i++)
+            {
+                int slot = list[i];
+                MouseSensetiveShape shape = shapes[slot];
+                int z = shape.getZOrder();
+                if((z > lastZ || z == lastZ && slot > lastSlot) && (nextSlot < 0 || z < nextZ || z == nextZ && slot < nextSlot) && intersects(shape, x, y, x, y))
+                {
+                    nextSlot = slot;
+                    nextZ = z;
+                }
+            }
+            if(nextSlot < 0) return null;
+            if(filter.accept(shapes[nextSlot])) return shapes[nextSlot];
+            lastZ = nextZ;
+            lastSlot = nextSlot;
+        }
+    }
+
+    private boolean intersects(MouseSensetiveShape shape, int x1, int y1, int x2, int y2)
+    {
+        return shape.getX() <= x2 && shape.getX() + shape.getWidth() >= x1 && shape.getY() <= y2 && shape.getY() + shape.getHeight() >= y1;
+    }
+
+    /**
+     * Converts a coordinate to a cell coordinate, rounding towards negative infinity so shapes can hang off the top or left edge.
+     */
+    private int cell(int value)
+    {
+        return value >= 0 ? value / cellSize : (value + 1) / cellSize - 1;
+    }
+
+    private int hash(int cx, int cy)
+    {
+        return (cx * 73856093 ^ cy * 19349663) & bucketMask;
+    }
+
+    /**
+     * Lists a slot in the bucket of every cell it covers.
+     */
+    private void link(int slot)
+    {
+        for(int cy = cellTop[slot]; cy <= cellBottom[slot]; cy++)
+        {
+            for(int cx = cellLeft[slot]; cx <= cellRight[slot]; cx++)
+            {
+                int bucket = hash(cx, cy);
+                int [] list = buckets[bucket];
+                int size = bucketSizes[bucket];
+                if(list == null)
+                {
+                    list = new int[4];
+                    buckets[bucket] = list;
+                }
+                else if(size == list.length)
+                {
+                    int [] newList = new int[size * 2];
+                    System.arraycopy(list, 0, newList, 0, size);
+                    list = newList;
+                    buckets[bucket] = list;
+                }
+                list[size] = slot;
+                bucketSizes[bucket] = size + 1;
+            }
+        }
+    }
+
+    /**
+     * Removes a slot from the bucket of every cell it covers.
+     */
+    private void unlink(int slot)
+    {
+        for(int cy = cellTop[slot]; cy <= cellBottom[slot]; cy++)
+        {
+            for(int cx = cellLeft[slot]; cx <= cellRight[slot]; cx++)
+            {
+                int bucket = hash(cx, cy);
+                int [] list = buckets[bucket];
+                int size = bucketSizes[bucket] - 1;
+                int i = 0;
+                while(list[i] != slot) i++;
+                //Order within a bucket doesn't matter - fill the hole with the last entry
+                list[i] = list[size];
+                bucketSizes[bucket] = size;
+            }
+        }
+    }
+
+    private void rehash(int bucketCount)
+    {
+        buckets = new int[bucketCount][];
+        bucketSizes = new int[bucketCount];
+        bucketMask = bucketCount - 1;
+        for(int slot = 0; slot < shapeCount; slot++) link(slot);
+    }
+
+    private void growSlots()
+    {
+        int size = shapes.length * 2;
+        MouseSensetiveShape [] newShapes = new MouseSensetiveShape[size];
+        System.arraycopy(shapes, 0, newShapes, 0, shapeCount);
+        shapes = newShapes;
+        cellLeft = grow(cellLeft, size);
+        cellTop = grow(cellTop, size);
+        cellRight = grow(cellRight, size);
+        cellBottom = grow(cellBottom, size);
+        marks = grow(marks, size);
+    }
+
+    private int [] grow(int [] list, int size)
+    {
+        int [] newList = new int[size];
+        System.arraycopy(list, 0, newList, 0, list.length);
+        return newList;
+    }
+
+    private void nextGeneration()
+    {
+        generation ++;
+        if(generation == Integer.MAX_VALUE)
+        {
+            //Start over - clear out the old stamps
+            generation = 1;
+            for(int i = 0; i < marks.length; i++) marks[i] = 0;
+        }
+    }
+
+    public String toString()
+    {
+        String returnValue = "cellSize: " + cellSize + " buckets: " + buckets.length + " shapes: " + shapeCount;
+        for(int i = 0; i < shapeCount; i++)
+        {
+            returnValue += "\n" + i + " x: " + shapes[i].getX() + " y: " + shapes[i].getY() + " width: " + shapes[i].getWidth() + " height: " + shapes[i].getHeight();
+        }
+        return returnValue;
+    }
+}
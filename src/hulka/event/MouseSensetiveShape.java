@@ -20,6 +20,10 @@
  * 
  * @author Jonathan Hulka (jon.hulka@gmail.com)
  * 
+ * 2026-10-17 - Jon - added a (width, height, index) constructor for subclasses that keep their position and z order elsewhere and override getX, getY and getZOrder
+ * 2026-10-17 - Jon - compareTo and toString read the z order through getZOrder, so subclasses can keep it elsewhere
+ * 2026-10-17 - Jon - added getOutline, for intersection tests without building Areas
+ * 2026-10-17 - Jon - toString reads the position through getX and getY, so subclasses can keep their position elsewhere
  * 2010-01-28 - Jon - added getShape to facilitate MouseSensetiveShapeManager.getIntersectingShapes
  */
 
@@ -36,6 +40,8 @@ public abstract class MouseSensetiveShape implements Comparable<MouseSensetiveSh
     protected int height;
     protected int index;
     protected int zOrder;
+    //Position in the ShapeIndex this shape is registered with, -1 if it isn't registered (maintained by the index)
+    int slot = -1;
     /**
     * Any implementation of this class should use this constructor or call it.
     */
@@ -48,13 +54,20 @@ public abstract class MouseSensetiveShape implements Comparable<MouseSensetiveSh
         this.index = index;
         this.zOrder = zOrder;
     }
+    /**
+    * For subclasses that keep their position and z order elsewhere, and override getX, getY and getZOrder.
+    */
+    public MouseSensetiveShape(int width, int height, int index)
+    {
+        this(0, 0, width, height, index, 0);
+    }
     public int getX(){ return x;}
     public int getY(){ return y;}
     public int getWidth(){ return width;}
     public int getHeight(){ return height;}
     public int getIndex(){return index;}
     public int getZOrder(){return zOrder;}
-    public String toString(){return "x: " + x + " y: " + y + " width"  + width + " height: " + height + " index: " + index + " zOrder: " + zOrder;}
+    public String toString(){return "x: " + getX() + " y: " + getY() + " width"  + getWidth() + " height: " + getHeight() + " index: " + index + " zOrder: " + getZOrder();}
     /**
     * Implement this function to define which points fall within the shape.
     */
@@ -64,12 +77,22 @@ public abstract class MouseSensetiveShape implements Comparable<MouseSensetiveSh
      * This should return the bounding shape
      */
     public abstract Shape getShape();
+
+    /**
+     * Returns the shape flattened into polygons, relative to getX(), getY(), for
+     * MouseSensetiveShapeManager.getIntersectingShapes. Implementations should build it
+     * once and keep it. This returns null, in which case getShape is used instead.
+     */
+    public ShapeOutline getOutline()
+    {
+        return null;
+    }
     
     /**
      * Implementation of natural ordering for Comparable
      */
     public int compareTo(MouseSensetiveShape shape)
     {
-		return zOrder - shape.getZOrder();
+		return getZOrder() - shape.getZOrder();
 	}
 }
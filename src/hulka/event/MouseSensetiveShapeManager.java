@@ -18,6 +18,14 @@
  */
 
 /**
+ * 2026 10 17 - Jon - setPickBuffer clears the buffer, so managers that take turns can share one
+ * 2026 10 17 - Jon - added pickTopmost, and setTopmostOnly for events that only carry the topmost shape. No event is built when there are no listeners.
+ * 2026 10 17 - Jon - getIntersectingShapes tests shapes' flattened outlines (see ShapeOutline) where they have them, setExactIntersection switches back to Areas
+ * 2026 10 17 - Jon - added addShapes and removeShapes, for registering a whole group of shapes with one index update
+ * 2026 10 17 - Jon - added optional PickBuffer for hit testing by a single raster read
+ * 2026 10 17 - Jon - added getIntersectingShapes(Rectangle,int[]) - allocation-free query for the tile snap and redraw paths
+ * 2026 10 17 - Jon - added containsShape
+ * 2026 10 17 - Jon - moved the row/column index into RowColumnShapeIndex and made the index pluggable (see ShapeIndex, GridShapeIndex)
  * 2010 06 29 - Jon - fixed getIntersectingShapes - z-order sorting was broken by previous changes
  * 2010-06-07 - Jon - fixed a bug that was causing an index out of bounds exception when no shapes are registered
  * 2010-01-29 - Jon - enhanced and debugged getIntersectingShapes
@@ -64,41 +72,143 @@ import java.util.Collections;
 
 public class MouseSensetiveShapeManager implements MouseListener
 {
-    private int [][] shapesByColumn;
-    private int [][] shapesByRow;
-    private int [] columnDividers;
-    private int [] rowDividers;
-    private MouseSensetiveShape [] shapes;
-    // used by insert and delete for temporary storage
-    private int [][] newIndexedShapes;
-    // used by insert and delete for temporary storage
-    private int [] newDividerList;
+    private ShapeIndex shapeIndex;
     private ArrayList <MouseSensetiveShapeListener> listeners;
+    private PickBuffer pickBuffer = null;
+    private boolean exactIntersection = false;
+    private boolean topmostOnly = false;
+    private PointFilter pointFilter = new PointFilter();
+
+    /**
+     * Accepts shapes that contain a point and pass another filter, for pickTopmost.
+     */
+    private static class PointFilter implements ShapeFilter
+    {
+        int x;
+        int y;
+        ShapeFilter filter;
+        public boolean accept(MouseSensetiveShape shape)
+        {
+            return (filter == null || filter.accept(shape)) && shape.containsPoint(x, y);
+        }
+    }
     
+    /**
+     * Uses the original row/column index (see RowColumnShapeIndex).
+     */
     public MouseSensetiveShapeManager()
     {
-        shapes = null;
-        columnDividers = null;
-        rowDividers = null;
-        shapesByColumn = null;
-        shapesByRow = null;
+        this(new RowColumnShapeIndex());
+    }
+
+    /**
+     * @param index the index implementation used to look up shapes by location, for example GridShapeIndex or RowColumnShapeIndex
+     */
+    public MouseSensetiveShapeManager(ShapeIndex index)
+    {
+        this.shapeIndex = index;
         listeners = new ArrayList<MouseSensetiveShapeListener>();
     }
+
+    /**
+     * Switches hit testing over to a PickBuffer, or back to containsPoint checks.
+     * With a pick buffer, events within the area it covers carry only the topmost shape.
+     * A buffer taken over from another manager forgets that manager's shapes, so managers that are never
+     * active at the same time, such as one per layer, can share one buffer. Turn it off in the other manager first.
+     * @param buffer the buffer to use, or null to turn it off
+     */
+    public synchronized void setPickBuffer(PickBuffer buffer)
+    {
+        pickBuffer = buffer;
+        if(pickBuffer != null)
+        {
+            pickBuffer.clear();
+            ArrayList<MouseSensetiveShape> registered = shapeIndex.getIntersectingShapes(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2);
+            for(int i = 0; i < registered.size(); i++) pickBuffer.addShape(registered.get(i));
+        }
+    }
+
+    /**
+     * Switches getIntersectingShapes between testing shapes' outlines (see MouseSensetiveShape.getOutline), and
+     * intersecting their Areas. Areas are exact, but much slower.
+     * @param exact true to always use Areas
+     */
+    public synchronized void setExactIntersection(boolean exact)
+    {
+        exactIntersection = exact;
+    }
+
+    public boolean isExactIntersection()
+    {
+        return exactIntersection;
+    }
+
+    /**
+     * Checks whether a shape overlaps a rectangle, through its outline if it has one.
+     */
+    private boolean intersects(MouseSensetiveShape shape, Rectangle bounds)
+    {
+        ShapeOutline outline = exactIntersection ? null : shape.getOutline();
+        if(outline != null) return outline.intersects(bounds.x - shape.getX(), bounds.y - shape.getY(), bounds.width, bounds.height);
+        return new Area(shape.getShape()).intersects(bounds);
+    }
+
+    /**
+     * Makes events carry only the topmost shape under the mouse (see pickTopmost), for listeners that don't look past it.
+     * Events within a pick buffer always carry only the topmost shape.
+     * @param topmost true to report only the topmost shape, false to report every shape under the mouse
+     */
+    public synchronized void setTopmostOnly(boolean topmost)
+    {
+        topmostOnly = topmost;
+    }
+
+    /**
+     * Finds the topmost shape containing a point. Candidates are checked in z order, and the search stops
+     * at the first one that contains the point, so shapes underneath it are never tested. Nothing is allocated.
+     * @param filter picks out the shapes to consider, such as those on one layer, or null to consider them all
+     * @return the topmost shape accepted by filter that contains the point, or null if there is none
+     */
+    public synchronized MouseSensetiveShape pickTopmost(int x, int y, ShapeFilter filter)
+    {
+        if(filter == null && pickBuffer != null && pickBuffer.covers(x, y)) return pickBuffer.getShapeAt(x, y, shapeIndex);
+        pointFilter.x = x;
+        pointFilter.y = y;
+        pointFilter.filter = filter;
+        MouseSensetiveShape shape = shapeIndex.getTopmostAt(x, y, pointFilter);
+        pointFilter.filter = null;
+        return shape;
+    }
+
     private MouseSensetiveShapeEvent buildMouseSensetiveShapeEvent(MouseEvent e)
     {
         MouseSensetiveShape [] results = null;
         MouseSensetiveShapeEvent ev = null;
-        int [] affectedShapes = getAffectedShapeBounds(e.getX(), e.getY());
+        //Nobody to tell
+        if(listeners.isEmpty()) return null;
+        if(topmostOnly)
+        {
+            MouseSensetiveShape shape = pickTopmost(e.getX(), e.getY(), null);
+            if(shape != null) ev = new MouseSensetiveShapeEvent(new MouseSensetiveShape[]{shape}, e);
+            return ev;
+        }
+        if(pickBuffer != null && pickBuffer.covers(e.getX(), e.getY()))
+        {
+            MouseSensetiveShape shape = pickBuffer.getShapeAt(e.getX(), e.getY(), shapeIndex);
+            if(shape != null) ev = new MouseSensetiveShapeEvent(new MouseSensetiveShape[]{shape}, e);
+            return ev;
+        }
+        MouseSensetiveShape [] affectedShapes = shapeIndex.getShapesAt(e.getX(), e.getY());
         if(affectedShapes != null)
         {
             int shift = 0;
-            int [] hits = new int[affectedShapes.length];
+            MouseSensetiveShape [] hits = new MouseSensetiveShape[affectedShapes.length];
             for(int i = 0; i < affectedShapes.length && !e.isConsumed(); i++)
             {
-                MouseSensetiveShape shape = shapes[affectedShapes[i]];
+                MouseSensetiveShape shape = affectedShapes[i];
                 if(shape.containsPoint(e.getX(), e.getY()))
                 {
-                    hits[i + shift] = affectedShapes[i];
+                    hits[i + shift] = shape;
                 }
                 else
                 {
@@ -111,7 +221,7 @@ public class MouseSensetiveShapeManager implements MouseListener
                 results = new MouseSensetiveShape[hitCount];
                 for(int i = 0; i < hitCount; i++)
                 {
-                    results[i] = shapes[hits[i]];
+                    results[i] = hits[i];
                 }
             }
         }
@@ -154,37 +264,46 @@ public class MouseSensetiveShapeManager implements MouseListener
     public synchronized MouseSensetiveShape [] getIntersectingShapes(Rectangle bounds)
     {
 		MouseSensetiveShape [] result = null;
-		if(shapes != null)
-		{
-			ArrayList<MouseSensetiveShape> crossMatches = getIntersectingShapes(bounds.x,bounds.y,bounds.x + bounds.width - 1,bounds.y + bounds.height - 1);
+		ArrayList<MouseSensetiveShape> crossMatches = shapeIndex.getIntersectingShapes(bounds.x,bounds.y,bounds.x + bounds.width - 1,bounds.y + bounds.height - 1);
 
-			//Check if the shapes themselves overlap, only keep the ones that actually touch
-			for(int index = 0; index < crossMatches.size(); )
+		//Check if the shapes themselves overlap, only keep the ones that actually touch
+		for(int index = 0; index < crossMatches.size(); )
+		{
+			MouseSensetiveShape shape = crossMatches.get(index);
+			if(intersects(shape, bounds))
 			{
-				MouseSensetiveShape shape = crossMatches.get(index);
-				Area test = new Area(shape.getShape());
-				//Get the intersection of the two areas
-				if(test.intersects(bounds))
-				{
-					//Yes, keep it
-					index++;
-				}
-				else
-				{
-					//No, discard it
-					crossMatches.remove(index);
-				}
+				//Yes, keep it
+				index++;
+			}
+			else
+			{
+				//No, discard it
+				crossMatches.remove(index);
 			}
-
-//			if(crossMatches.size()>0)
-//			{
-				result = crossMatches.toArray(new MouseSensetiveShape[crossMatches.size()]);
-				Arrays.sort(result);
-//			}
 		}
+
+//		if(crossMatches.size()>0)
+//		{
+			result = crossMatches.toArray(new MouseSensetiveShape[crossMatches.size()]);
+			Arrays.sort(result);
+//		}
 		return result;
 	}
 	
+    /**
+     * Allocation-free intersection query for hot paths such as tile snapping and redraws.
+     * Unlike getIntersectingShapes(Rectangle), only bounding boxes are checked, so the
+     * results may include shapes that come close to the rectangle without touching it.
+     * @param bounds the rectangle to check
+     * @param result storage for the indices (see MouseSensetiveShape.getIndex()) of intersecting shapes, sorted by zOrder.
+     * This must have room for every registered shape.
+     * @return the number of indices stored in result
+     */
+    public synchronized int getIntersectingShapes(Rectangle bounds, int [] result)
+    {
+        return shapeIndex.getIntersectingShapes(bounds.x,bounds.y,bounds.x + bounds.width - 1,bounds.y + bounds.height - 1,result);
+    }
+
     /**
      * Returns MouseSensetiveShapes intersecting the specified target
      * The returned values will be sorted by zOrder
@@ -194,195 +313,80 @@ public class MouseSensetiveShapeManager implements MouseListener
     public synchronized MouseSensetiveShape [] getIntersectingShapes(MouseSensetiveShape target)
     {
 		MouseSensetiveShape [] result = null;
-		if(shapes != null)
-		{
-			int x1 = target.getX();
-			int x2 = x1 + target.getWidth();
-			int y1 = target.getY();
-			int y2 = y1 + target.getHeight();
-			
-			ArrayList<MouseSensetiveShape> crossMatches = getIntersectingShapes(x1,y1,x2,y2);
+		int x1 = target.getX();
+		int x2 = x1 + target.getWidth();
+		int y1 = target.getY();
+		int y2 = y1 + target.getHeight();
+		
+		ArrayList<MouseSensetiveShape> crossMatches = shapeIndex.getIntersectingShapes(x1,y1,x2,y2);
 
-			Area aTarget = new Area(target.getShape());
-			Rectangle2D rTarget = aTarget.getBounds2D();
+		ShapeOutline oTarget = exactIntersection ? null : target.getOutline();
+		Area aTarget = null;
+		Rectangle2D rTarget = null;
 
-			//Check if the shapes themselves overlap, only keep the ones that actually touch
-			for(int index = 0; index < crossMatches.size(); )
+		//Check if the shapes themselves overlap, only keep the ones that actually touch
+		for(int index = 0; index < crossMatches.size(); )
+		{
+			MouseSensetiveShape shape = crossMatches.get(index);
+			ShapeOutline outline = oTarget == null ? null : shape.getOutline();
+			boolean touches;
+			if(outline != null)
+			{
+				touches = oTarget.intersects(outline, shape.getX() - target.getX(), shape.getY() - target.getY());
+			}
+			else
 			{
 				//There is no way to test two areas directly for intersection, so do it this way:
-				MouseSensetiveShape shape = crossMatches.get(index);
+				if(aTarget == null)
+				{
+					aTarget = new Area(target.getShape());
+					rTarget = aTarget.getBounds2D();
+				}
 				Area test = new Area(shape.getShape());
 				//Get the intersection of the two areas
 				test.intersect(aTarget);
 				//Then see if it intersects the bounding rectangle of one
-				if(test.intersects(rTarget))
-				{
-					//Yes, keep it
-					index++;
-				}
-				else
-				{
-					//No, discard it
-					crossMatches.remove(index);
-				}
+				touches = test.intersects(rTarget);
 			}
-			
-			if(crossMatches.size()>0)
+			if(touches)
 			{
-				result = crossMatches.toArray(new MouseSensetiveShape[crossMatches.size()]);
-				Arrays.sort(result);
+				//Yes, keep it
+				index++;
 			}
-		}
-		return result;
-	}
-
-	//This function does most of the work for the other getIntersectingShapes functions
-	private ArrayList<MouseSensetiveShape> getIntersectingShapes(int x1, int y1, int x2, int y2)
-	{
-		
-        int row1 = findLast(y1, rowDividers);
-        if(row1 >= rowDividers.length || rowDividers[row1] > y1 && row1 > 0) row1 --;
-        int row2 = findLast(y2, rowDividers);
-        if(row2 >= rowDividers.length || rowDividers[row2] > y2 && row2 > 0) row2 --;
-
-        int column1 = findLast(x1,columnDividers);
-        if(column1 >= columnDividers.length || columnDividers[column1] > x1 && column1 > 0) column1 --;
-        int column2 = findLast(x2,columnDividers);
-        if(column2 >= columnDividers.length || columnDividers[column2] > x2 && column2 > 0) column2 --;
-
-        //Build a list of shapes that share columns with the target
-        ArrayList<MouseSensetiveShape> columnMatches = new ArrayList<MouseSensetiveShape>();
-        for(int i = column1; i <= column2; i++)
-        {
-			if(shapesByColumn[i]!=null) for(int j =0; j < shapesByColumn[i].length; j++)
+			else
 			{
-				if(columnMatches.indexOf(shapes[shapesByColumn[i][j]]) < 0) columnMatches.add(shapes[shapesByColumn[i][j]]);
-			}
-		}
-
-		//Keep only those that also share rows, the bounding boxes of these will intersect with the target's bounding box
-		ArrayList<MouseSensetiveShape> crossMatches = new ArrayList<MouseSensetiveShape>();
-        for(int i = row1; i <= row2; i++)
-        {
-			if(shapesByRow[i] != null) for(int j = 0; j < shapesByRow[i].length; j++)
-			{
-				if(columnMatches.remove(shapes[shapesByRow[i][j]])) crossMatches.add(shapes[shapesByRow[i][j]]);			
+				//No, discard it
+				crossMatches.remove(index);
 			}
 		}
 		
-		return crossMatches;
+		if(crossMatches.size()>0)
+		{
+			result = crossMatches.toArray(new MouseSensetiveShape[crossMatches.size()]);
+			Arrays.sort(result);
+		}
+		return result;
 	}
-	    
+
     /**
     * Remove a MouseSensetiveShape from the events list
     * @param shape the MouseSensetiveShape to remove
     */
     public synchronized void removeShape(MouseSensetiveShape shape)
     {
-        //Find the shape based on its location
-        int columnDivider = shape.x;
-        int columnIndex = findFirst(columnDivider, columnDividers);
-        int shapeIndex = -1;
-
-        if(columnIndex < columnDividers.length && columnDividers[columnIndex] == columnDivider)
-        {
-            for(int i = 0; i < shapesByColumn[columnIndex].length && shapeIndex == -1; i++)
-            {
-                if(shape == shapes[shapesByColumn[columnIndex][i]]) shapeIndex = shapesByColumn[columnIndex][i];
-            }
-        }
-
-        if(shapeIndex > -1)
-        {
-            MouseSensetiveShape newShapes[] = shapes.length==1 ? null : new MouseSensetiveShape[shapes.length -1];
-            //Remove the deleted shape from the shapes list
-            for(int i = 0; i < shapeIndex; i++)
-            {
-                newShapes[i] = shapes[i];
-            }
-            for(int i = shapeIndex; newShapes != null && i < newShapes.length; i++)
-            {
-                newShapes[i] = shapes[i + 1];
-            }
-//To do: change shapes to grow only, it shouldn't resize when shapes are being removed
-            shapes = newShapes;
-            delete(shapesByRow, rowDividers, shapeIndex);
-            shapesByRow = newIndexedShapes;
-            rowDividers = newDividerList;
-            delete(shapesByColumn, columnDividers, shapeIndex);
-            shapesByColumn = newIndexedShapes;
-            columnDividers = newDividerList;
-            
-        }
+        shapeIndex.removeShape(shape);
+        if(pickBuffer != null) pickBuffer.removeShape(shape);
     }
 
     /**
-    * helper function for RemoveShape
+    * Checks whether a MouseSensetiveShape is in the events list
+    * @param shape the MouseSensetiveShape to look for
+    * @return true if the shape is registered
     */
-    private void delete(int [][] indexedShapes, int [] dividerList, int shapeIndex)
+    public synchronized boolean containsShape(MouseSensetiveShape shape)
     {
-        newIndexedShapes = new int[indexedShapes.length - 2][];
-        newDividerList = new int[newIndexedShapes.length];
-        int iShift = 0;
-        for(int i = 0; i < indexedShapes.length; i++)
-        {
-            int jShift = 0;
-            for(int j = 0; indexedShapes[i] != null && j < indexedShapes[i].length; j++)
-            {
-                indexedShapes[i][j + jShift] = indexedShapes[i][j];
-                if(indexedShapes[i][j] == shapeIndex)
-                {
-                    //skip over this shape and shift the others down
-                    jShift --;
-                }
-                else if(indexedShapes[i][j] > shapeIndex)
-                {
-                    //adjust the index
-                    indexedShapes[i][j + jShift] --;
-                }
-            }
-            
-            if(jShift < 0)
-            {
-                if(iShift == 0)
-                {
-                   //this is the first time the deleted shape is encountered
-                   //Remove the column/row and shift the others down
-                   iShift --;
-                }
-                else if(i < indexedShapes.length - 1)
-                //check for the special case where the column/row to be deleted is the last one
-                {
-                    int newLength = indexedShapes[i].length + jShift;
-                    int [] newList = null;
-                    if(newLength > 0)
-                    {
-                        newList = new int[newLength];
-                        for(int j = 0; j < newLength; j++)
-                        {
-                            newList[j] = indexedShapes[i][j];
-                        }
-                    }
-                    newIndexedShapes[i + iShift] = newList;
-                    newDividerList[i + iShift] = dividerList[i];
-                }
-            }
-            else
-            {
-                if(iShift == -1)
-                {
-                    //this should be just after the last time the deleted shape is encountered
-                    //remove the column/row and shift the others down
-                    iShift --;
-                }
-                else
-                {
-                    newIndexedShapes[i + iShift] = indexedShapes[i];
-                    newDividerList[i + iShift] = dividerList[i];
-                }
-            }
-        }    
-    }    
+        return shapeIndex.containsShape(shape);
+    }
 
     /**
     * Add a MouseSensetiveShape to listen for mouse events on
@@ -390,345 +394,42 @@ public class MouseSensetiveShapeManager implements MouseListener
     */
     public synchronized void addShape(MouseSensetiveShape shape)
     {
-        int left = shape.x;
-        int right = shape.x + shape.width + 1;
-        int top = shape.y;
-        int bottom = shape.y + shape.height + 1;
-        if(shapes == null)
-        {
-            //Special case, the lists are empty
-            shapes = new MouseSensetiveShape[1];
-            shapes[0] = shape;
-            columnDividers = new int[2];
-            columnDividers[0] = left;
-            columnDividers[1] = right;
-            rowDividers = new int[2];
-            rowDividers[0] = top;
-            rowDividers[1] = bottom;
-            shapesByColumn = new int[2][];
-            shapesByColumn[0] = new int[1];
-            shapesByColumn[0][0] = 0;
-            shapesByColumn[1] = null;
-            shapesByRow = new int[2][];
-            shapesByRow[0] = new int[1];
-            shapesByRow[0][0] = 0;
-            shapesByRow[1] = null;
-            
-        }
-        else
-        {
-            //add new shape to list
-            int index = shapes.length;
-            MouseSensetiveShape newShapes[] = new MouseSensetiveShape[index + 1];
-            for(int i = 0; i < index; i++)
-            {
-                newShapes[i] = shapes[i];
-            }
-            newShapes[index] = shape;
-            shapes = newShapes;
-            //find column position
-            int leftIndex = findFirst(left, columnDividers);
-            //find next column position
-            int rightIndex = findFirst(right, columnDividers);
-            //insert new columns
-            insert(shapesByColumn, columnDividers,left, right, leftIndex, rightIndex, index);
-            shapesByColumn = newIndexedShapes;
-            columnDividers = newDividerList;
-            //find row position
-            int topIndex = findFirst(top, rowDividers);
-            //find next row position
-            int bottomIndex = findFirst(bottom, rowDividers);
-            //insert new rows
-            insert(shapesByRow, rowDividers,top, bottom, topIndex, bottomIndex, index);
-            shapesByRow = newIndexedShapes;
-            rowDividers = newDividerList;
-        }
+        shapeIndex.addShape(shape);
+        if(pickBuffer != null) pickBuffer.addShape(shape);
     }
-    
+
     /**
-    * helper function to insert a new row or column
+    * Add several MouseSensetiveShapes at once, such as a group of tiles being dropped.
+    * Cheaper than calling addShape for each, depending on the index (see ShapeIndex.addShapes).
+    * @param shapes the shapes to add
+    * @param count number of entries in shapes to add, starting at 0
     */
-    private void insert(int [][] indexedShapes, int [] dividerList, int thisPosition, int nextPosition, int thisIndex, int nextIndex, int shapeIndex)
+    public synchronized void addShapes(MouseSensetiveShape [] shapes, int count)
     {
-        int dividerCount = dividerList.length;
-        int indexOffset = 0;
-        
-        newIndexedShapes = new int[dividerList.length + 2][];
-        newDividerList = new int[dividerList.length + 2];
-
-        //Copy rows or columns that come before the affected shape
-        for(int i = 0; i < thisIndex; i++)
-        {
-            newDividerList[i + indexOffset] = dividerList[i];
-            newIndexedShapes[i + indexOffset] = indexedShapes[i];
-        }
-       
-         //Insert the new divider for the start position
-        newDividerList[thisIndex + indexOffset] = thisPosition;
-        
-        //Determine which row/column this divider splits
-        int sharedIndex = thisIndex - 1;
-        if(thisIndex < dividerList.length && dividerList[thisIndex] == thisPosition)
-        {
-            sharedIndex ++;
-        }
-        
-        if(sharedIndex >= 0)
+        shapeIndex.addShapes(shapes, count);
+        if(pickBuffer != null)
         {
-            newIndexedShapes[thisIndex + indexOffset] = insertShapeIndex(shapeIndex, indexedShapes[sharedIndex]);
+            for(int i = 0; i < count; i++) pickBuffer.addShape(shapes[i]);
         }
-        else
-        {
-            //There is no column before this one
-            newIndexedShapes[thisIndex + indexOffset] = new int[1];
-            newIndexedShapes[thisIndex + indexOffset][0] = shapeIndex;
-        }
-        indexOffset++;
-
-       
-        //insert new shape into affected range of rows/columns
-        for(int i = thisIndex; i < nextIndex; i++)
-        {
-            newDividerList[i + indexOffset] = dividerList[i];
-            
-            newIndexedShapes[i + indexOffset] = insertShapeIndex(shapeIndex, indexedShapes[i]);
-        }
-
-        //Insert the new divider for the end position
-        newDividerList[nextIndex + indexOffset] = nextPosition;
-        //It will contain everything that was previously in the row/column that has been split...
-        if(nextIndex < dividerList.length && dividerList[nextIndex] == nextPosition)
-        {
-            //Unless the row/column was not split because the divider fell on a boundary...
-            //In which case, copy from the next row/column
-            newIndexedShapes[nextIndex + indexOffset] = copy(indexedShapes[nextIndex]);
-        }
-        else if(nextIndex > 0)
-        {
-            newIndexedShapes[nextIndex + indexOffset] = copy(indexedShapes[nextIndex - 1]);
-        }
-        else
-        {
-            //Or there was no row/column to split because the new row/column comes before any others
-            newIndexedShapes[nextIndex + indexOffset] = null;
-        }
-        indexOffset++;
-        
-        //No changes to make to rows or columns after the affected range
-        for(int i = nextIndex; i < dividerList.length; i++)
-        {
-            newDividerList[i + indexOffset] = dividerList[i];
-            newIndexedShapes[i + indexOffset] = indexedShapes[i];
-        }
-       
     }
 
-    private int[] copy(int[] oldArray)
-    {
-        int [] newArray;
-        if(oldArray == null)
-        {
-            newArray = null;
-        }
-        else
-        {
-            newArray = new int[oldArray.length];
-            for(int i = 0; i < oldArray.length; i++)
-            {
-                newArray[i] = oldArray[i];
-            }
-        }
-        return newArray;
-    }
-    
-    private int[] insertShapeIndex(int index, int[] oldArray)
-    {
-        int [] newArray;
-        if(oldArray == null)
-        {
-            newArray = new int[1];
-            newArray[0] = index;
-        }
-        else
-        {
-            newArray = new int[oldArray.length + 1];
-            int indexOffset = 0;
-            int zOrder = shapes[index].getZOrder();
-
-            for(int i = 0; i < oldArray.length; i++)
-            {
-                if(indexOffset == 0 && shapes[oldArray[i]].getZOrder() >= zOrder)
-                {
-                    newArray[i] = index;
-                    indexOffset = 1;
-                }
-                newArray[i + indexOffset] = oldArray[i];
-            }
-            if(indexOffset == 0)
-            {
-                newArray[oldArray.length] = index;
-            }
-        }
-        return newArray;
-    }
-    
     /**
-    * given an array of integers sorted in ascending order, finds an element equal to the search value, or the first element greater than the search value.  The array elements need not be unique.
-    * @param value the value to search for
-    * @param list an array of integers sorted in ascending order
-    * @return an element equal to the search value if it exists, otherwise the first element greater than the search value, or -1 if the list is empty
-    *
+    * Remove several MouseSensetiveShapes at once.
+    * @param shapes the shapes to remove
+    * @param count number of entries in shapes to remove, starting at 0
     */
-    private int find(int value, int [] list)
+    public synchronized void removeShapes(MouseSensetiveShape [] shapes, int count)
     {
-		int index=-1;
-		if(list.length > 0)
-		{
-			int top = list.length - 1;
-			int bottom = 0;
-			index = top/2;
-			while(top != bottom)
-			{
-				if(list[index] < value)
-				{
-					bottom = index + 1;
-					if(bottom > top) bottom = top;
-				}
-				else if(list[index] > value)
-				{
-					top = index - 1;
-					if(top < bottom) top = bottom;
-				}
-				else
-				{
-					top = index;
-					bottom = index;
-				}
-				index = (top + bottom)/2;
-			}
-			if(list[index] < value) index++;
-		}
-        return index;
-    }
-    
-    /**
-    * given an array of integers sorted in ascending order, finds the last element equal to the search value, or the first element greater than the search value.  The array elements need not be unique.
-    * @param value the value to search for
-    * @param list an array of integers sorted in ascending order
-    * @return the last element equal to the search value if it exists, otherwise the first element greater than the search value, or -1 if the list is empty
-    */
-    private int findLast(int value, int [] list)
-    {
-        int index;
-        for(index = find(value, list); index>=0 && index < list.length - 1 && list[index + 1] <= value; index ++);
-        return index;
-    }
-    
-    /**
-    * given an array of integers sorted in ascending order, finds the first element greater than or equal to the search value.  The array elements need not be unique.
-    * @param value the value to search for
-    * @param list an array of integers sorted in ascending order
-    * @return the first element greater than or equal to the search value
-    */
-    private int findFirst(int value, int [] list)
-    {
-        int index;
-        for(index = find(value, list); index > 0 && list[index - 1] >= value; index --);
-        return index;
-    }
-
-    private int [] getAffectedShapeBounds(int x, int y)
-    {
-        int [] affectedShapes = null;
-        int column = findLast(x,columnDividers);
-        if(column >= 0 && (column >= columnDividers.length || columnDividers[column] > x)) column --;
-        int row = findLast(y, rowDividers);
-        if(row >= 0 && (row >= rowDividers.length || rowDividers[row] > y)) row --;
-
-        if(column >= 0 && row >= 0 && column < columnDividers.length && row < rowDividers.length && shapesByColumn[column] != null && shapesByRow[row] != null)
+        shapeIndex.removeShapes(shapes, count);
+        if(pickBuffer != null)
         {
-            int [] list = new int[Math.min(shapesByColumn[column].length, shapesByRow[row].length)];
-            int index = 0;
-            for(int i = 0; i < shapesByRow[row].length; i ++)
-            {
-                for(int j = 0; j < shapesByColumn[column].length; j++)
-                {
-                    if(shapesByColumn[column][j] == shapesByRow[row][i])
-                    {
-                        list[index] = shapesByColumn[column][j];
-                        index++;
-                    }
-                }
-            }
-            if(index == 0) return null;
-
-            affectedShapes = new int[index];
-            for(int i = 0; i < index; i++)
-            {
-                affectedShapes[i] = list[i];
-            }
+            for(int i = 0; i < count; i++) pickBuffer.removeShape(shapes[i]);
         }
-        return affectedShapes;
     }
-    
+
     public String toString()
     {
-        String returnValue;
-        if(shapesByColumn == null)
-        {
-            returnValue = "no shapes";
-        }
-        else
-        {
-            returnValue = "shapesByColumn:";
-            for(int i = 0; i < shapesByColumn.length; i++)
-            {
-                returnValue += "\n";
-                if(shapesByColumn[i] == null)
-                {
-                    returnValue += "<null>";
-                }
-                else
-                {
-                    for(int j = 0; j < shapesByColumn[i].length; j++)
-                    {
-                        returnValue += shapesByColumn[i][j] + " ";
-                    }
-                }
-            }
-            returnValue += "\nshapesByRow:";
-            for(int i = 0; i < shapesByRow.length; i++)
-            {
-                returnValue += "\n";
-                if(shapesByRow[i] == null)
-                {
-                    returnValue += "<null>";
-                }
-                else
-                {
-                    for(int j = 0; j < shapesByRow[i].length; j++)
-                    {
-                        returnValue += shapesByRow[i][j] + " ";
-                    }
-                }
-            }
-            returnValue += "\ncolumnDividers:\n";
-            for(int i = 0; i < columnDividers.length; i++)
-            {
-                returnValue += columnDividers[i] + " ";
-            }
-            returnValue += "\nrowDividers:\n";
-            for(int i = 0; i < rowDividers.length; i++)
-            {
-                returnValue += rowDividers[i] + " ";
-            }
-            returnValue += "\nshapes:";
-            for(int i = 0; i < shapes.length; i++)
-            {
-                returnValue += "\n" + i + " x: " + shapes[i].x + " y: " + shapes[i].y + " width: " + shapes[i].width + " x: " + shapes[i].height;
-            }
-        }
-        return returnValue;
+        return shapeIndex.toString();
     }
     
     public synchronized void addEventListener(MouseSensetiveShapeListener listener)
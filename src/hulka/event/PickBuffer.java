@@ -0,0 +1,198 @@
+/**
+ *      PickBuffer.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package hulka.event;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import hulka.gui.DirtyRegionList;
+
+
+/**
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ *
+ * A raster of shape indices for hit testing. <br>
+ *
+ * Each pixel holds the index (see MouseSensetiveShape.getIndex()) of the
+ * topmost shape covering it, plus one, or zero where there is no shape.
+ * Finding the shape under the mouse is then a single array read instead
+ * of a containsPoint test against each candidate. <br>
+ *
+ * The raster is not redrawn straight away when shapes are added or
+ * removed. The affected areas are remembered and redrawn, from the
+ * MouseSensetiveShapeManager's index, the next time a pixel is read.
+ * This way, picking up and dropping many shapes at once costs a single
+ * redraw. Areas far apart, such as where a group was picked up and where
+ * it was dropped, are kept separate (see DirtyRegionList) so the space
+ * between them isn't redrawn. <br>
+ *
+ * The raster isn't allocated until the first pixel is read. A buffer is
+ * used by one manager at a time; handing it to another manager, as when
+ * switching layers, redraws it from that manager's shapes. <br>
+ *
+ * Shapes are rasterized with Graphics2D.fill, so results can differ from
+ * containsPoint by a pixel along curved edges.
+ */
+
+public class PickBuffer
+{
+    private BufferedImage image;
+    private int [] pixels;
+    private int width;
+    private int height;
+    //Registered shapes, indexed by MouseSensetiveShape.getIndex()
+    private MouseSensetiveShape [] shapes;
+    //Pixel color for each shape index, made once
+    private Color [] colors;
+    //Areas that have to be redrawn before the next read
+    private DirtyRegionList dirty = new DirtyRegionList();
+    //Storage for the shapes found in each area
+    private int [] hits;
+
+    /**
+     * @param width width of the area covered, shapes outside this area are picked the usual way
+     * @param height height of the area covered
+     */
+    public PickBuffer(int width, int height)
+    {
+        this.width = width < 1 ? 1 : width;
+        this.height = height < 1 ? 1 : height;
+        shapes = new MouseSensetiveShape[16];
+        colors = new Color[16];
+        hits = new int[16];
+    }
+
+    /**
+     * Checks whether a point is inside the area covered by the buffer.
+     */
+    public boolean covers(int x, int y)
+    {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * Records a shape that has been registered with the manager.
+     */
+    void addShape(MouseSensetiveShape shape)
+    {
+        int index = shape.getIndex();
+        if(index >= shapes.length)
+        {
+            int size = shapes.length * 2;
+            while(size <= index) size *= 2;
+            MouseSensetiveShape [] newShapes = new MouseSensetiveShape[size];
+            System.arraycopy(shapes, 0, newShapes, 0, shapes.length);
+            shapes = newShapes;
+            Color [] newColors = new Color[size];
+            System.arraycopy(colors, 0, newColors, 0, colors.length);
+            colors = newColors;
+            hits = new int[size];
+        }
+        shapes[index] = shape;
+        if(colors[index] == null) colors[index] = new Color(index + 1);
+        invalidate(shape);
+    }
+
+    /**
+     * Forgets a shape that has been removed from the manager.
+     */
+    void removeShape(MouseSensetiveShape shape)
+    {
+        int index = shape.getIndex();
+        if(index < shapes.length && shapes[index] == shape) shapes[index] = null;
+        invalidate(shape);
+    }
+
+    /**
+     * Forgets every shape and marks the whole buffer for redrawing, before another manager takes the buffer over.
+     */
+    void clear()
+    {
+        for(int i = 0; i < shapes.length; i++) shapes[i] = null;
+        dirty.clear();
+        dirty.add(0, 0, width, height);
+    }
+
+    /**
+     * Marks the area covered by a shape's bounding box for redrawing.
+     */
+    private void invalidate(MouseSensetiveShape shape)
+    {
+        dirty.add(shape.getX(), shape.getY(), shape.getWidth() + 1, shape.getHeight() + 1);
+    }
+
+    /**
+     * Returns the topmost shape at a point.
+     * @param index the index of registered shapes, used to redraw any areas that have changed.
+     * @return the shape, or null if there is no shape at that point
+     */
+    MouseSensetiveShape getShapeAt(int x, int y, ShapeIndex index)
+    {
+        if(image == null || !dirty.isEmpty()) flush(index);
+        int id = pixels[y * width + x] & 0xffffff;
+        return id > 0 && id <= shapes.length ? shapes[id - 1] : null;
+    }
+
+    /**
+     * Redraws the changed areas, bottom shape first.
+     */
+    private void flush(ShapeIndex index)
+    {
+        if(image == null)
+        {
+            //A new raster is all black (no shape) - only areas with shapes need drawing, and every registered shape has marked its area
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        }
+        Graphics2D g = image.createGraphics();
+        //A pixel is filled when its center is inside the shape - shift by half a pixel to
+        //match MouseSensetiveShape.containsPoint, which tests the pixel's top left corner
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        AffineTransform pixelCorners = g.getTransform();
+        for(int r = 0; r < dirty.getCount(); r++)
+        {
+            Rectangle region = dirty.get(r);
+            int x1 = Math.max(region.x, 0);
+            int y1 = Math.max(region.y, 0);
+            int x2 = Math.min(region.x + region.width, width);
+            int y2 = Math.min(region.y + region.height, height);
+            if(x1 >= x2 || y1 >= y2) continue;
+            g.setTransform(pixelCorners);
+            g.setClip(x1, y1, x2 - x1, y2 - y1);
+            g.setColor(Color.BLACK);
+            g.fillRect(x1, y1, x2 - x1, y2 - y1);
+            g.translate(0.5, 0.5);
+            //Results come in ascending z order, and the lowest z order is on top, so draw them in reverse
+            int count = index.getIntersectingShapes(x1, y1, x2 - 1, y2 - 1, hits);
+            for(int i = count - 1; i >= 0; i--)
+            {
+                MouseSensetiveShape shape = shapes[hits[i]];
+                if(shape == null) continue;
+                g.setColor(colors[hits[i]]);
+                g.fill(shape.getShape());
+            }
+        }
+        dirty.clear();
+        g.dispose();
+    }
+}
@@ -0,0 +1,854 @@
+/**
+ *      RowColumnShapeIndex.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *      
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *      
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *      
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * 2026 10 17 - Jon - added getTopmostAt
+ * 2026 10 17 - Jon - shapes is grow only - removed shapes leave a free slot for the next one added, and other shapes keep their slots
+ * 2026 10 17 - Jon - added addShapes and removeShapes - large batches rebuild the tables once
+ * 2026 10 17 - Jon - shape positions are read through getX/getY/getWidth/getHeight
+ * 2026 10 17 - Jon - moved out of MouseSensetiveShapeManager so the index implementation can be swapped (see GridShapeIndex)
+ */
+
+package hulka.event;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/** 
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ * 
+ * The original MouseSensetiveShapeManager index. <br>
+ * 
+ * Shape bounding boxes are split into sorted row and column dividers, with
+ * a z-ordered list of shape indices for each row and column. Queries are
+ * fast, but every addShape and removeShape rebuilds the divider and index
+ * arrays, so updates are O(n). addShapes and removeShapes rebuild them once
+ * for the whole batch. <br>
+ *
+ * The row and column lists refer to shapes by slot. Slots don't change
+ * while a shape is registered: a removed shape leaves an empty slot, which
+ * goes on a free list for the next shape added, so picking up and dropping
+ * the same shapes doesn't grow the shapes array. Once more than half the
+ * slots are empty the tables are rebuilt with the shapes packed together.
+ */
+
+public class RowColumnShapeIndex implements ShapeIndex
+{
+    private int [][] shapesByColumn;
+    private int [][] shapesByRow;
+    private int [] columnDividers;
+    private int [] rowDividers;
+    //Grow only, empty slots are null
+    private MouseSensetiveShape [] shapes;
+    //Slots used so far, including empty ones
+    private int slotCount;
+    //Registered shapes
+    private int shapeCount;
+    //Empty slots below slotCount, reused by addShape
+    private int [] freeSlots;
+    private int freeCount;
+    // used by insert and delete for temporary storage
+    private int [][] newIndexedShapes;
+    // used by insert and delete for temporary storage
+    private int [] newDividerList;
+    // generation stamps for removing duplicates from query results (see collectSlots)
+    private int [] marks;
+    private int generation;
+    // query storage for getIntersectingShapes
+    private int [] slotBuffer;
+    //Tweak this - batches at least this big rebuild the tables instead of updating them once per shape
+    private static final int BATCH_REBUILD_SIZE = 4;
+    //Tweak this - smaller indexes aren't worth compacting
+    private static final int MIN_COMPACT_SLOTS = 64;
+    
+    public RowColumnShapeIndex()
+    {
+        shapes = null;
+        slotCount = 0;
+        shapeCount = 0;
+        freeCount = 0;
+        columnDividers = null;
+        rowDividers = null;
+        shapesByColumn = null;
+        shapesByRow = null;
+    }
+
+    public ArrayList<MouseSensetiveShape> getIntersectingShapes(int x1, int y1, int x2, int y2)
+	{
+		ArrayList<MouseSensetiveShape> crossMatches = new ArrayList<MouseSensetiveShape>();
+		if(shapeCount > 0)
+		{
+			if(slotBuffer == null || slotBuffer.length < shapes.length) slotBuffer = new int[shapes.length * 2];
+			int count = collectSlots(x1, y1, x2, y2, slotBuffer);
+			for(int i = 0; i < count; i++) crossMatches.add(shapes[slotBuffer[i]]);
+		}
+		return crossMatches;
+	}
+
+    public int getIntersectingShapes(int x1, int y1, int x2, int y2, int [] result)
+    {
+        int count = 0;
+        if(shapeCount > 0)
+        {
+            count = collectSlots(x1, y1, x2, y2, result);
+            ZOrderSort.sort(result, count, shapes);
+            ZOrderSort.toShapeIndices(result, count, shapes);
+        }
+        return count;
+    }
+
+	//This function does most of the work for the getIntersectingShapes functions
+	private int collectSlots(int x1, int y1, int x2, int y2, int [] result)
+	{
+        int row1 = findLast(y1, rowDividers);
+        if(row1 >= rowDividers.length || rowDividers[row1] > y1 && row1 > 0) row1 --;
+        int row2 = findLast(y2, rowDividers);
+        if(row2 >= rowDividers.length || rowDividers[row2] > y2 && row2 > 0) row2 --;
+
+        int column1 = findLast(x1,columnDividers);
+        if(column1 >= columnDividers.length || columnDividers[column1] > x1 && column1 > 0) column1 --;
+        int column2 = findLast(x2,columnDividers);
+        if(column2 >= columnDividers.length || columnDividers[column2] > x2 && column2 > 0) column2 --;
+
+        //Each query uses two generations - one marks column matches, the other marks shapes already reported
+        if(marks == null || marks.length < shapes.length)
+        {
+            marks = new int[shapes.length * 2];
+            generation = 0;
+        }
+        if(generation >= Integer.MAX_VALUE - 2)
+        {
+            generation = 0;
+            for(int i = 0; i < marks.length; i++) marks[i] = 0;
+        }
+        int columnMatch = generation + 1;
+        int crossMatch = generation + 2;
+        generation = crossMatch;
+
+        //Mark shapes that share columns with the target
+        for(int i = column1; i <= column2; i++)
+        {
+			if(shapesByColumn[i]!=null) for(int j =0; j < shapesByColumn[i].length; j++)
+			{
+				marks[shapesByColumn[i][j]] = columnMatch;
+			}
+		}
+
+		//Keep only those that also share rows, the bounding boxes of these will intersect with the target's bounding box
+		int count = 0;
+        for(int i = row1; i <= row2; i++)
+        {
+			if(shapesByRow[i] != null) for(int j = 0; j < shapesByRow[i].length; j++)
+			{
+				int slot = shapesByRow[i][j];
+				if(marks[slot] == columnMatch)
+				{
+					marks[slot] = crossMatch;
+					result[count++] = slot;
+				}
+			}
+		}
+		
+		return count;
+	}
+	    
+    /**
+    * Remove a MouseSensetiveShape from the events list
+    * @param shape the MouseSensetiveShape to remove
+    */
+    public boolean containsShape(MouseSensetiveShape shape)
+    {
+        return shapeCount > 0 && findShape(shape) > -1;
+    }
+
+    /**
+    * Finds a shape based on its location
+    * @return the shape's slot, or -1 if it isn't registered
+    */
+    private int findShape(MouseSensetiveShape shape)
+    {
+        int columnDivider = shape.getX();
+        int columnIndex = findFirst(columnDivider, columnDividers);
+        int shapeIndex = -1;
+
+        //The column can be empty if the shape isn't registered and starts where another one ends
+        if(columnIndex < columnDividers.length && columnDividers[columnIndex] == columnDivider && shapesByColumn[columnIndex] != null)
+        {
+            for(int i = 0; i < shapesByColumn[columnIndex].length && shapeIndex == -1; i++)
+            {
+                if(shape == shapes[shapesByColumn[columnIndex][i]]) shapeIndex = shapesByColumn[columnIndex][i];
+            }
+        }
+        return shapeIndex;
+    }
+
+    public void removeShape(MouseSensetiveShape shape)
+    {
+        int shapeIndex = shapeCount > 0 ? findShape(shape) : -1;
+
+        if(shapeIndex > -1)
+        {
+            delete(shapesByRow, rowDividers, shapeIndex);
+            shapesByRow = newIndexedShapes;
+            rowDividers = newDividerList;
+            delete(shapesByColumn, columnDividers, shapeIndex);
+            shapesByColumn = newIndexedShapes;
+            columnDividers = newDividerList;
+            freeSlot(shapeIndex);
+            if(shapeCount == 0)
+            {
+                //Start over from slot 0
+                rebuild(shapes, 0);
+            }
+            else if(slotCount >= MIN_COMPACT_SLOTS && freeCount > shapeCount)
+            {
+                //Mostly empty slots - pack the shapes together
+                rebuild(getShapes(0), shapeCount);
+            }
+        }
+    }
+
+    /**
+    * Puts a shape in a slot, reusing an empty one if there is one.
+    * @return the slot
+    */
+    private int allocateSlot(MouseSensetiveShape shape)
+    {
+        int slot;
+        if(freeCount > 0)
+        {
+            slot = freeSlots[--freeCount];
+        }
+        else
+        {
+            if(shapes == null || slotCount == shapes.length)
+            {
+                MouseSensetiveShape [] newShapes = new MouseSensetiveShape[shapes == null ? 16 : Math.max(16, shapes.length * 2)];
+                if(shapes != null) System.arraycopy(shapes, 0, newShapes, 0, slotCount);
+                shapes = newShapes;
+            }
+            slot = slotCount++;
+        }
+        shapes[slot] = shape;
+        shapeCount ++;
+        return slot;
+    }
+
+    /**
+    * Empties a slot and puts it on the free list. The caller has already taken it out of the row and column lists.
+    */
+    private void freeSlot(int slot)
+    {
+        if(freeSlots == null || freeSlots.length < shapes.length)
+        {
+            int [] newFreeSlots = new int[shapes.length];
+            if(freeSlots != null) System.arraycopy(freeSlots, 0, newFreeSlots, 0, freeCount);
+            freeSlots = newFreeSlots;
+        }
+        shapes[slot] = null;
+        freeSlots[freeCount++] = slot;
+        shapeCount --;
+    }
+
+    /**
+    * Lists the registered shapes, packed together.
+    * @param extra extra room to leave at the end of the list
+    */
+    private MouseSensetiveShape [] getShapes(int extra)
+    {
+        MouseSensetiveShape [] list = new MouseSensetiveShape[shapeCount + extra];
+        int count = 0;
+        for(int i = 0; i < slotCount; i++)
+        {
+            if(shapes[i] != null) list[count++] = shapes[i];
+        }
+        return list;
+    }
+
+    public void removeShapes(MouseSensetiveShape [] removed, int count)
+    {
+        if(count < BATCH_REBUILD_SIZE || shapeCount == 0)
+        {
+            for(int i = 0; i < count; i++) removeShape(removed[i]);
+        }
+        else
+        {
+            boolean [] isRemoved = new boolean[slotCount];
+            int removedCount = 0;
+            for(int i = 0; i < count; i++)
+            {
+                int shapeIndex = findShape(removed[i]);
+                if(shapeIndex > -1 && !isRemoved[shapeIndex])
+                {
+                    isRemoved[shapeIndex] = true;
+                    removedCount ++;
+                }
+            }
+            if(removedCount > 0)
+            {
+                MouseSensetiveShape [] newShapes = new MouseSensetiveShape[shapeCount - removedCount];
+                int j = 0;
+                for(int i = 0; i < slotCount; i++)
+                {
+                    if(shapes[i] != null && !isRemoved[i]) newShapes[j++] = shapes[i];
+                }
+                rebuild(newShapes, j);
+            }
+        }
+    }
+
+    public void addShapes(MouseSensetiveShape [] added, int count)
+    {
+        if(count < BATCH_REBUILD_SIZE)
+        {
+            for(int i = 0; i < count; i++) addShape(added[i]);
+        }
+        else
+        {
+            MouseSensetiveShape [] newShapes = getShapes(count);
+            int newCount = shapeCount;
+            for(int i = 0; i < count; i++)
+            {
+                //addShape doesn't check for duplicates either, but a batch may well repeat shapes that are already registered
+                if(!containsShape(added[i])) newShapes[newCount++] = added[i];
+            }
+            rebuild(newShapes, newCount);
+        }
+    }
+
+    /**
+    * Rebuilds the row and column tables from scratch for a new list of shapes.
+    * Every shape contributes two dividers to each table, as with addShape, and each row and
+    * column lists the shapes that cover it in ascending z order.
+    * @param newShapes the shapes, packed together - this becomes the shapes array, and the rest of it is free for adding shapes
+    * @param count the number of shapes
+    */
+    private void rebuild(MouseSensetiveShape [] newShapes, int count)
+    {
+        shapes = newShapes;
+        slotCount = count;
+        shapeCount = count;
+        freeCount = 0;
+        for(int i = count; i < shapes.length; i++) shapes[i] = null;
+        if(count == 0)
+        {
+            columnDividers = null;
+            rowDividers = null;
+            shapesByColumn = null;
+            shapesByRow = null;
+            return;
+        }
+        int [] order = new int[count];
+        for(int i = 0; i < count; i++) order[i] = i;
+        ZOrderSort.sort(order, count, shapes);
+        columnDividers = new int[count * 2];
+        rowDividers = new int[count * 2];
+        for(int i = 0; i < count; i++)
+        {
+            columnDividers[i * 2] = shapes[i].getX();
+            columnDividers[i * 2 + 1] = shapes[i].getX() + shapes[i].getWidth() + 1;
+            rowDividers[i * 2] = shapes[i].getY();
+            rowDividers[i * 2 + 1] = shapes[i].getY() + shapes[i].getHeight() + 1;
+        }
+        Arrays.sort(columnDividers);
+        Arrays.sort(rowDividers);
+        shapesByColumn = buildLists(columnDividers, order, true);
+        shapesByRow = buildLists(rowDividers, order, false);
+    }
+
+    /**
+    * helper function for rebuild - lists the shapes covering each row or column
+    * @param dividerList sorted row or column dividers
+    * @param order shape indices in ascending z order
+    * @param columns true to list by column, false to list by row
+    */
+    private int [][] buildLists(int [] dividerList, int [] order, boolean columns)
+    {
+        int [] counts = new int[dividerList.length];
+        for(int i = 0; i < order.length; i++)
+        {
+            MouseSensetiveShape shape = shapes[order[i]];
+            int start = columns ? shape.getX() : shape.getY();
+            int end = start + (columns ? shape.getWidth() : shape.getHeight()) + 1;
+            for(int j = findFirst(start, dividerList); j < dividerList.length && dividerList[j] < end; j++) counts[j] ++;
+        }
+        int [][] lists = new int[dividerList.length][];
+        for(int j = 0; j < lists.length; j++)
+        {
+            if(counts[j] > 0) lists[j] = new int[counts[j]];
+            counts[j] = 0;
+        }
+        for(int i = 0; i < order.length; i++)
+        {
+            MouseSensetiveShape shape = shapes[order[i]];
+            int start = columns ? shape.getX() : shape.getY();
+            int end = start + (columns ? shape.getWidth() : shape.getHeight()) + 1;
+            for(int j = findFirst(start, dividerList); j < dividerList.length && dividerList[j] < end; j++) lists[j][counts[j]++] = order[i];
+        }
+        return lists;
+    }
+
+    /**
+    * helper function for RemoveShape
+    */
+    private void delete(int [][] indexedShapes, int [] dividerList, int shapeIndex)
+    {
+        newIndexedShapes = new int[indexedShapes.length - 2][];
+        newDividerList = new int[newIndexedShapes.length];
+        int iShift = 0;
+        for(int i = 0; i < indexedShapes.length; i++)
+        {
+            int jShift = 0;
+            for(int j = 0; indexedShapes[i] != null && j < indexedShapes[i].length; j++)
+            {
+                indexedShapes[i][j + jShift] = indexedShapes[i][j];
+                if(indexedShapes[i][j] == shapeIndex)
+                {
+                    //skip over this shape and shift the others down - other shapes keep their slots
+                    jShift --;
+                }
+            }
+            
+            if(jShift < 0)
+            {
+                if(iShift == 0)
+                {
+                   //this is the first time the deleted shape is encountered
+                   //Remove the column/row and shift the others down
+                   iShift --;
+                }
+                else if(i < indexedShapes.length - 1)
+                //check for the special case where the column/row to be deleted is the last one
+                {
+                    int newLength = indexedShapes[i].length + jShift;
+                    int [] newList = null;
+                    if(newLength > 0)
+                    {
+                        newList = new int[newLength];
+                        for(int j = 0; j < newLength; j++)
+                        {
+                            newList[j] = indexedShapes[i][j];
+                        }
+                    }
+                    newIndexedShapes[i + iShift] = newList;
+                    newDividerList[i + iShift] = dividerList[i];
+                }
+            }
+            else
+            {
+                if(iShift == -1)
+                {
+                    //this should be just after the last time the deleted shape is encountered
+                    //remove the column/row and shift the others down
+                    iShift --;
+                }
+                else
+                {
+                    newIndexedShapes[i + iShift] = indexedShapes[i];
+                    newDividerList[i + iShift] = dividerList[i];
+                }
+            }
+        }    
+    }    
+
+    /**
+    * Add a MouseSensetiveShape to listen for mouse events on
+    * @param shape the MouseSensetiveShape to add
+    */
+    public void addShape(MouseSensetiveShape shape)
+    {
+        int left = shape.getX();
+        int right = shape.getX() + shape.getWidth() + 1;
+        int top = shape.getY();
+        int bottom = shape.getY() + shape.getHeight() + 1;
+        int index = allocateSlot(shape);
+        if(shapeCount == 1)
+        {
+            //Special case, the lists are empty
+            columnDividers = new int[2];
+            columnDividers[0] = left;
+            columnDividers[1] = right;
+            rowDividers = new int[2];
+            rowDividers[0] = top;
+            rowDividers[1] = bottom;
+            shapesByColumn = new int[2][];
+            shapesByColumn[0] = new int[1];
+            shapesByColumn[0][0] = index;
+            shapesByColumn[1] = null;
+            shapesByRow = new int[2][];
+            shapesByRow[0] = new int[1];
+            shapesByRow[0][0] = index;
+            shapesByRow[1] = null;
+            
+        }
+        else
+        {
+            //find column position
+            int leftIndex = findFirst(left, columnDividers);
+            //find next column position
+            int rightIndex = findFirst(right, columnDividers);
+            //insert new columns
+            insert(shapesByColumn, columnDividers,left, right, leftIndex, rightIndex, index);
+            shapesByColumn = newIndexedShapes;
+            columnDividers = newDividerList;
+            //find row position
+            int topIndex = findFirst(top, rowDividers);
+            //find next row position
+            int bottomIndex = findFirst(bottom, rowDividers);
+            //insert new rows
+            insert(shapesByRow, rowDividers,top, bottom, topIndex, bottomIndex, index);
+            shapesByRow = newIndexedShapes;
+            rowDividers = newDividerList;
+        }
+    }
+    
+    /**
+    * helper function to insert a new row or column
+    */
+    private void insert(int [][] indexedShapes, int [] dividerList, int thisPosition, int nextPosition, int thisIndex, int nextIndex, int shapeIndex)
+    {
+        int dividerCount = dividerList.length;
+        int indexOffset = 0;
+        
+        newIndexedShapes = new int[dividerList.length + 2][];
+        newDividerList = new int[dividerList.length + 2];
+
+        //Copy rows or columns that come before the affected shape
+        for(int i = 0; i < thisIndex; i++)
+        {
+            newDividerList[i + indexOffset] = dividerList[i];
+            newIndexedShapes[i + indexOffset] = indexedShapes[i];
+        }
+       
+         //Insert the new divider for the start position
+        newDividerList[thisIndex + indexOffset] = thisPosition;
+        
+        //Determine which row/column this divider splits
+        int sharedIndex = thisIndex - 1;
+        if(thisIndex < dividerList.length && dividerList[thisIndex] == thisPosition)
+        {
+            sharedIndex ++;
+        }
+        
+        if(sharedIndex >= 0)
+        {
+            newIndexedShapes[thisIndex + indexOffset] = insertShapeIndex(shapeIndex, indexedShapes[sharedIndex]);
+        }
+        else
+        {
+            //There is no column before this one
+            newIndexedShapes[thisIndex + indexOffset] = new int[1];
+            newIndexedShapes[thisIndex + indexOffset][0] = shapeIndex;
+        }
+        indexOffset++;
+
+       
+        //insert new shape into affected range of rows/columns
+        for(int i = thisIndex; i < nextIndex; i++)
+        {
+            newDividerList[i + indexOffset] = dividerList[i];
+            
+            newIndexedShapes[i + indexOffset] = insertShapeIndex(shapeIndex, indexedShapes[i]);
+        }
+
+        //Insert the new divider for the end position
+        newDividerList[nextIndex + indexOffset] = nextPosition;
+        //It will contain everything that was previously in the row/column that has been split...
+        if(nextIndex < dividerList.length && dividerList[nextIndex] == nextPosition)
+        {
+            //Unless the row/column was not split because the divider fell on a boundary...
+            //In which case, copy from the next row/column
+            newIndexedShapes[nextIndex + indexOffset] = copy(indexedShapes[nextIndex]);
+        }
+        else if(nextIndex > 0)
+        {
+            newIndexedShapes[nextIndex + indexOffset] = copy(indexedShapes[nextIndex - 1]);
+        }
+        else
+        {
+            //Or there was no row/column to split because the new row/column comes before any others
+            newIndexedShapes[nextIndex + indexOffset] = null;
+        }
+        indexOffset++;
+        
+        //No changes to make to rows or columns after the affected range
+        for(int i = nextIndex; i < dividerList.length; i++)
+        {
+            newDividerList[i + indexOffset] = dividerList[i];
+            newIndexedShapes[i + indexOffset] = indexedShapes[i];
+        }
+       
+    }
+
+    private int[] copy(int[] oldArray)
+    {
+        int [] newArray;
+        if(oldArray == null)
+        {
+            newArray = null;
+        }
+        else
+        {
+            newArray = new int[oldArray.length];
+            for(int i = 0; i < oldArray.length; i++)
+            {
+                newArray[i] = oldArray[i];
+            }
+        }
+        return newArray;
+    }
+    
+    private int[] insertShapeIndex(int index, int[] oldArray)
+    {
+        int [] newArray;
+        if(oldArray == null)
+        {
+            newArray = new int[1];
+            newArray[0] = index;
+        }
+        else
+        {
+            newArray = new int[oldArray.length + 1];
+            int indexOffset = 0;
+            int zOrder = shapes[index].getZOrder();
+
+            for(int i = 0; i < oldArray.length; i++)
+            {
+                if(indexOffset == 0 && shapes[oldArray[i]].getZOrder() >= zOrder)
+                {
+                    newArray[i] = index;
+                    indexOffset = 1;
+                }
+                newArray[i + indexOffset] = oldArray[i];
+            }
+            if(indexOffset == 0)
+            {
+                newArray[oldArray.length] = index;
+            }
+        }
+        return newArray;
+    }
+    
+    /**
+    * given an array of integers sorted in ascending order, finds an element equal to the search value, or the first element greater than the search value.  The array elements need not be unique.
+    * @param value the value to search for
+    * @param list an array of integers sorted in ascending order
+    * @return an element equal to the search value if it exists, otherwise the first element greater than the search value, or -1 if the list is empty
+    *
+    */
+    private int find(int value, int [] list)
+    {
+		int index=-1;
+		if(list.length > 0)
+		{
+			int top = list.length - 1;
+			int bottom = 0;
+			index = top/2;
+			while(top != bottom)
+			{
+				if(list[index] < value)
+				{
+					bottom = index + 1;
+					if(bottom > top) bottom = top;
+				}
+				else if(list[index] > value)
+				{
+					top = index - 1;
+					if(top < bottom) top = bottom;
+				}
+				else
+				{
+					top = index;
+					bottom = index;
+				}
+				index = (top + bottom)/2;
+			}
+			if(list[index] < value) index++;
+		}
+        return index;
+    }
+    
+    /**
+    * given an array of integers sorted in ascending order, finds the last element equal to the search value, or the first element greater than the search value.  The array elements need not be unique.
+    * @param value the value to search for
+    * @param list an array of integers sorted in ascending order
+    * @return the last element equal to the search value if it exists, otherwise the first element greater than the search value, or -1 if the list is empty
+    */
+    private int findLast(int value, int [] list)
+    {
+        int index;
+        for(index = find(value, list); index>=0 && index < list.length - 1 && list[index + 1] <= value; index ++);
+        return index;
+    }
+    
+    /**
+    * given an array of integers sorted in ascending order, finds the first element greater than or equal to the search value.  The array elements need not be unique.
+    * @param value the value to search for
+    * @param list an array of integers sorted in ascending order
+    * @return the first element greater than or equal to the search value
+    */
+    private int findFirst(int value, int [] list)
+    {
+        int index;
+        for(index = find(value, list); index > 0 && list[index - 1] >= value; index --);
+        return index;
+    }
+
+    public MouseSensetiveShape [] getShapesAt(int x, int y)
+    {
+        MouseSensetiveShape [] result = null;
+        int [] affectedShapes = shapeCount == 0 ? null : getAffectedShapeBounds(x, y);
+        if(affectedShapes != null)
+        {
+            result = new MouseSensetiveShape[affectedShapes.length];
+            for(int i = 0; i < affectedShapes.length; i++)
+            {
+                result[i] = shapes[affectedShapes[i]];
+            }
+        }
+        return result;
+    }
+
+    public MouseSensetiveShape getTopmostAt(int x, int y, ShapeFilter filter)
+    {
+        if(shapeCount == 0) return null;
+        int column = findLast(x,columnDividers);
+        if(column >= 0 && (column >= columnDividers.length || columnDividers[column] > x)) column --;
+        int row = findLast(y, rowDividers);
+        if(row >= 0 && (row >= rowDividers.length || rowDividers[row] > y)) row --;
+        if(column < 0 || row < 0 || column >= columnDividers.length || row >= rowDividers.length || shapesByColumn[column] == null || shapesByRow[row] == null) return null;
+
+        //Mark the column's shapes, then walk the row - both lists are already in ascending z order
+        if(marks == null || marks.length < shapes.length)
+        {
+            marks = new int[shapes.length * 2];
+            generation = 0;
+        }
+        if(generation >= Integer.MAX_VALUE - 1)
+        {
+            generation = 0;
+            for(int i = 0; i < marks.length; i++) marks[i] = 0;
+        }
+        int columnMatch = ++generation;
+        int [] columnList = shapesByColumn[column];
+        for(int i = 0; i < columnList.length; i++) marks[columnList[i]] = columnMatch;
+        int [] rowList = shapesByRow[row];
+        for(int i = 0; i < rowList.length; i++)
+        {
+            if(marks[rowList[i]] == columnMatch && filter.accept(shapes[rowList[i]])) return shapes[rowList[i]];
+        }
+        return null;
+    }
+
+    private int [] getAffectedShapeBounds(int x, int y)
+    {
+        int [] affectedShapes = null;
+        int column = findLast(x,columnDividers);
+        if(column >= 0 && (column >= columnDividers.length || columnDividers[column] > x)) column --;
+        int row = findLast(y, rowDividers);
+        if(row >= 0 && (row >= rowDividers.length || rowDividers[row] > y)) row --;
+
+        if(column >= 0 && row >= 0 && column < columnDividers.length && row < rowDividers.length && shapesByColumn[column] != null && shapesByRow[row] != null)
+        {
+            int [] list = new int[Math.min(shapesByColumn[column].length, shapesByRow[row].length)];
+            int index = 0;
+            for(int i = 0; i < shapesByRow[row].length; i ++)
+            {
+                for(int j = 0; j < shapesByColumn[column].length; j++)
+                {
+                    if(shapesByColumn[column][j] == shapesByRow[row][i])
+                    {
+                        list[index] = shapesByColumn[column][j];
+                        index++;
+                    }
+                }
+            }
+            if(index == 0) return null;
+
+            affectedShapes = new int[index];
+            for(int i = 0; i < index; i++)
+            {
+                affectedShapes[i] = list[i];
+            }
+        }
+        return affectedShapes;
+    }
+    
+    public String toString()
+    {
+        String returnValue;
+        if(shapesByColumn == null)
+        {
+            returnValue = "no shapes";
+        }
+        else
+        {
+            returnValue = "shapesByColumn:";
+            for(int i = 0; i < shapesByColumn.length; i++)
+            {
+                returnValue += "\n";
+                if(shapesByColumn[i] == null)
+                {
+                    returnValue += "<null>";
+                }
+                else
+                {
+                    for(int j = 0; j < shapesByColumn[i].length; j++)
+                    {
+                        returnValue += shapesByColumn[i][j] + " ";
+                    }
+                }
+            }
+            returnValue += "\nshapesByRow:";
+            for(int i = 0; i < shapesByRow.length; i++)
+            {
+                returnValue += "\n";
+                if(shapesByRow[i] == null)
+                {
+                    returnValue += "<null>";
+                }
+                else
+                {
+                    for(int j = 0; j < shapesByRow[i].length; j++)
+                    {
+                        returnValue += shapesByRow[i][j] + " ";
+                    }
+                }
+            }
+            returnValue += "\ncolumnDividers:\n";
+            for(int i = 0; i < columnDividers.length; i++)
+            {
+                returnValue += columnDividers[i] + " ";
+            }
+            returnValue += "\nrowDividers:\n";
+            for(int i = 0; i < rowDividers.length; i++)
+            {
+                returnValue += rowDividers[i] + " ";
+            }
+            returnValue += "\nshapes:";
+            for(int i = 0; i < slotCount; i++)
+            {
+                if(shapes[i] == null) returnValue += "\n" + i + " <free>";
+                else returnValue += "\n" + i + " x: " + shapes[i].getX() + " y: " + shapes[i].getY() + " width: " + shapes[i].getWidth() + " x: " + shapes[i].getHeight();
+            }
+        }
+        return returnValue;
+    }
+    
+}
@@ -0,0 +1,35 @@
+/**
+ *      ShapeFilter.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * Picks out shapes for MouseSensetiveShapeManager.pickTopmost, such as
+ * those on a particular layer.
+ *
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ */
+
+package hulka.event;
+
+public interface ShapeFilter
+{
+    /**
+    * @param shape a shape under consideration
+    * @return true to accept the shape
+    */
+    public boolean accept(MouseSensetiveShape shape);
+}
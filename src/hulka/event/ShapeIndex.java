@@ -0,0 +1,103 @@
+/**
+ *      ShapeIndex.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * The bounding box index behind a MouseSensetiveShapeManager.
+ * Implementations only deal with bounding boxes; the manager takes care of
+ * exact shape tests, z-order sorting of query results and event dispatch.
+ *
+ * Shapes must not be moved while they are registered with an index.
+ * Remove the shape, move it, then add it again.
+ *
+ * The same goes for z order, with one exception: z orders of registered
+ * shapes may be reassigned as long as the order between all registered
+ * shapes stays the same (shapes with equal z orders stay equal), since
+ * indexes only rely on the order, not on the values.
+ *
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ */
+
+package hulka.event;
+import java.util.ArrayList;
+
+public interface ShapeIndex
+{
+    /**
+    * Adds a shape to the index.
+    * @param shape the shape to add
+    */
+    public void addShape(MouseSensetiveShape shape);
+
+    /**
+    * Removes a shape from the index.
+    * @param shape the shape to remove
+    */
+    public void removeShape(MouseSensetiveShape shape);
+
+    /**
+    * Adds several shapes at once, such as a connected group of tiles being dropped.
+    * Implementations that rebuild their tables on every update should rebuild them once here.
+    * @param shapes the shapes to add
+    * @param count number of entries in shapes to add, starting at 0
+    */
+    public void addShapes(MouseSensetiveShape [] shapes, int count);
+
+    /**
+    * Removes several shapes at once. Shapes that aren't registered are ignored.
+    * @param shapes the shapes to remove
+    * @param count number of entries in shapes to remove, starting at 0
+    */
+    public void removeShapes(MouseSensetiveShape [] shapes, int count);
+
+    /**
+    * Checks whether a shape is registered with the index.
+    * @param shape the shape to look for
+    * @return true if the shape has been added and not removed
+    */
+    public boolean containsShape(MouseSensetiveShape shape);
+
+    /**
+    * Returns the shapes whose bounding boxes intersect the rectangle x1,y1 - x2,y2 (inclusive).
+    * Results are not sorted.
+    * @return list of intersecting shapes, empty if there are none
+    */
+    public ArrayList<MouseSensetiveShape> getIntersectingShapes(int x1, int y1, int x2, int y2);
+
+    /**
+    * Allocation-free version of getIntersectingShapes for hot paths.
+    * Each shape is reported once, even if it is listed in several rows, columns or cells.
+    * @param result storage for the indices (see MouseSensetiveShape.getIndex()) of shapes whose bounding boxes intersect the rectangle x1,y1 - x2,y2 (inclusive), in ascending z order.
+    * It must have room for every registered shape.
+    * @return the number of indices stored in result
+    */
+    public int getIntersectingShapes(int x1, int y1, int x2, int y2, int [] result);
+
+    /**
+    * Returns the shapes whose bounding boxes contain the point.
+    * @return the shapes, in ascending z order, or null if there are none
+    */
+    public MouseSensetiveShape [] getShapesAt(int x, int y);
+
+    /**
+    * Visits the shapes whose bounding boxes contain the point in ascending z order, stopping at the first one the filter accepts.
+    * The manager does its exact shape test in the filter. Nothing is allocated.
+    * @param filter decides which shape to return
+    * @return the first shape accepted, or null if there is none
+    */
+    public MouseSensetiveShape getTopmostAt(int x, int y, ShapeFilter filter);
+}
@@ -0,0 +1,295 @@
+/**
+ *      ShapeOutline.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package hulka.event;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+
+
+/**
+ * @author Jonathan Hulka (jon.hulka@gmail.com)
+ *
+ * A shape flattened into polygons, for intersection tests. <br>
+ *
+ * Curves are replaced by straight edges once, when the outline is built,
+ * so testing two outlines for overlap only compares line segments instead
+ * of building and intersecting Areas. Two outlines overlap if any of their
+ * edges cross, or if one lies entirely inside the other. <br>
+ *
+ * Edges are only compared where the bounding boxes of both outlines meet,
+ * which for neighboring tiles is a narrow strip along their shared side. <br>
+ *
+ * Results can differ from an Area intersection where the shapes come
+ * within the flatness of each other, or only touch along an edge.
+ */
+
+public class ShapeOutline
+{
+    //Tweak this - largest distance between a curve and the edges replacing it, in pixels
+    public static final double DEFAULT_FLATNESS = 0.25;
+
+    //Vertices of all the polygons, one after another
+    private double [] xs;
+    private double [] ys;
+    private int pointCount;
+    //First vertex of each polygon, with pointCount at the end
+    private int [] polygonStarts;
+    private int polygonCount;
+    private boolean evenOdd;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+
+    public ShapeOutline(Shape shape)
+    {
+        this(shape, DEFAULT_FLATNESS);
+    }
+
+    /**
+     * @param shape the shape to flatten
+     * @param flatness largest distance between a curve and the edges replacing it
+     */
+    public ShapeOutline(Shape shape, double flatness)
+    {
+        xs = new double[64];
+        ys = new double[64];
+        polygonStarts = new int[4];
+        pointCount = 0;
+        polygonCount = 0;
+        minX = minY = Double.MAX_VALUE;
+        maxX = maxY = -Double.MAX_VALUE;
+        double [] coords = new double[6];
+        PathIterator path = shape.getPathIterator(null, flatness);
+        evenOdd = path.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        for(; !path.isDone(); path.next())
+        {
+            switch(path.currentSegment(coords))
+            {
+                case PathIterator.SEG_MOVETO:
+                    endPolygon();
+                    polygonStarts[polygonCount] = pointCount;
+                    addPoint(coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    addPoint(coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    endPolygon();
+                    break;
+            }
+        }
+        endPolygon();
+        polygonStarts[polygonCount] = pointCount;
+    }
+
+    private void addPoint(double x, double y)
+    {
+        if(pointCount == xs.length)
+        {
+            double [] newXs = new double[xs.length * 2];
+            double [] newYs = new double[ys.length * 2];
+            System.arraycopy(xs, 0, newXs, 0, pointCount);
+            System.arraycopy(ys, 0, newYs, 0, pointCount);
+            xs = newXs;
+            ys = newYs;
+        }
+        xs[pointCount] = x;
+        ys[pointCount] = y;
+        pointCount ++;
+        if(x < minX) minX = x;
+        if(x > maxX) maxX = x;
+        if(y < minY) minY = y;
+        if(y > maxY) maxY = y;
+    }
+
+    /**
+     * Finishes the polygon being built, if there is one. Polygons with fewer than three vertices are dropped, as they cover no area.
+     */
+    private void endPolygon()
+    {
+        int start = polygonStarts[polygonCount];
+        if(pointCount > start)
+        {
+            //The path may repeat the first vertex to close the polygon - edges wrap around anyway
+            if(pointCount - start > 1 && xs[pointCount - 1] == xs[start] && ys[pointCount - 1] == ys[start]) pointCount --;
+            if(pointCount - start < 3)
+            {
+                pointCount = start;
+            }
+            else
+            {
+                if(polygonCount + 2 > polygonStarts.length)
+                {
+                    int [] newStarts = new int[polygonStarts.length * 2];
+                    System.arraycopy(polygonStarts, 0, newStarts, 0, polygonCount + 1);
+                    polygonStarts = newStarts;
+                }
+                polygonCount ++;
+            }
+            polygonStarts[polygonCount] = pointCount;
+        }
+    }
+
+    /**
+     * Returns the number of edges, after flattening.
+     */
+    public int getEdgeCount()
+    {
+        return pointCount;
+    }
+
+    /**
+     * Checks whether a point falls inside the outline.
+     */
+    public boolean contains(double x, double y)
+    {
+        if(x < minX || x > maxX || y < minY || y > maxY) return false;
+        int winding = 0;
+        for(int p = 0; p < polygonCount; p++)
+        {
+            int start = polygonStarts[p];
+            int end = polygonStarts[p + 1];
+            for(int i = start; i < end; i++)
+            {
+                int j = i + 1 < end ? i + 1 : start;
+                if(ys[i] <= y)
+                {
+                    if(ys[j] > y && cross(xs[i], ys[i], xs[j], ys[j], x, y) > 0) winding ++;
+                }
+                else if(ys[j] <= y && cross(xs[i], ys[i], xs[j], ys[j], x, y) < 0) winding --;
+            }
+        }
+        return evenOdd ? (winding & 1) != 0 : winding != 0;
+    }
+
+    /**
+     * Checks whether this outline overlaps another.
+     * @param other the outline to check
+     * @param dx position of other's origin relative to this outline's origin
+     * @param dy position of other's origin relative to this outline's origin
+     */
+    public boolean intersects(ShapeOutline other, double dx, double dy)
+    {
+        //Only edges within both bounding boxes can cross
+        double left = Math.max(minX, other.minX + dx);
+        double top = Math.max(minY, other.minY + dy);
+        double right = Math.min(maxX, other.maxX + dx);
+        double bottom = Math.min(maxY, other.maxY + dy);
+        if(left > right || top > bottom || polygonCount == 0 || other.polygonCount == 0) return false;
+
+        for(int p = 0; p < polygonCount; p++)
+        {
+            int start = polygonStarts[p];
+            int end = polygonStarts[p + 1];
+            for(int i = start; i < end; i++)
+            {
+                int j = i + 1 < end ? i + 1 : start;
+                double ax1 = xs[i], ay1 = ys[i], ax2 = xs[j], ay2 = ys[j];
+                if(Math.max(ax1, ax2) < left || Math.min(ax1, ax2) > right || Math.max(ay1, ay2) < top || Math.min(ay1, ay2) > bottom) continue;
+                if(other.crossesEdge(ax1 - dx, ay1 - dy, ax2 - dx, ay2 - dy)) return true;
+            }
+        }
+        //No edges cross, so either one is inside the other or they are apart
+        for(int p = 0; p < other.polygonCount; p++)
+        {
+            int i = other.polygonStarts[p];
+            if(contains(other.xs[i] + dx, other.ys[i] + dy)) return true;
+        }
+        for(int p = 0; p < polygonCount; p++)
+        {
+            int i = polygonStarts[p];
+            if(other.contains(xs[i] - dx, ys[i] - dy)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether this outline overlaps a rectangle.
+     */
+    public boolean intersects(double x, double y, double width, double height)
+    {
+        double right = x + width;
+        double bottom = y + height;
+        if(width <= 0 || height <= 0 || x > maxX || right < minX || y > maxY || bottom < minY || polygonCount == 0) return false;
+        for(int p = 0; p < polygonCount; p++)
+        {
+            int start = polygonStarts[p];
+            int end = polygonStarts[p + 1];
+            for(int i = start; i < end; i++)
+            {
+                //A vertex inside the rectangle
+                if(xs[i] >= x && xs[i] <= right && ys[i] >= y && ys[i] <= bottom) return true;
+                int j = i + 1 < end ? i + 1 : start;
+                //An edge crossing the rectangle
+                if(Math.max(xs[i], xs[j]) < x || Math.min(xs[i], xs[j]) > right || Math.max(ys[i], ys[j]) < y || Math.min(ys[i], ys[j]) > bottom) continue;
+                if(segmentsCross(xs[i], ys[i], xs[j], ys[j], x, y, right, y)
+                    || segmentsCross(xs[i], ys[i], xs[j], ys[j], right, y, right, bottom)
+                    || segmentsCross(xs[i], ys[i], xs[j], ys[j], right, bottom, x, bottom)
+                    || segmentsCross(xs[i], ys[i], xs[j], ys[j], x, bottom, x, y)) return true;
+            }
+        }
+        //The rectangle may be entirely inside the outline
+        return contains(x, y);
+    }
+
+    /**
+     * Checks whether a line segment crosses any edge of this outline.
+     */
+    private boolean crossesEdge(double x1, double y1, double x2, double y2)
+    {
+        double left = Math.min(x1, x2);
+        double right = Math.max(x1, x2);
+        double top = Math.min(y1, y2);
+        double bottom = Math.max(y1, y2);
+        for(int p = 0; p < polygonCount; p++)
+        {
+            int start = polygonStarts[p];
+            int end = polygonStarts[p + 1];
+            for(int i = start; i < end; i++)
+            {
+                int j = i + 1 < end ? i + 1 : start;
+                if(Math.max(xs[i], xs[j]) < left || Math.min(xs[i], xs[j]) > right || Math.max(ys[i], ys[j]) < top || Math.min(ys[i], ys[j]) > bottom) continue;
+                if(segmentsCross(xs[i], ys[i], xs[j], ys[j], x1, y1, x2, y2)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether two line segments cross or touch. The caller has already checked that their bounding boxes meet.
+     */
+    private static boolean segmentsCross(double ax1, double ay1, double ax2, double ay2, double bx1, double by1, double bx2, double by2)
+    {
+        double d1 = cross(bx1, by1, bx2, by2, ax1, ay1);
+        double d2 = cross(bx1, by1, bx2, by2, ax2, ay2);
+        if(d1 > 0 && d2 > 0 || d1 < 0 && d2 < 0) return false;
+        double d3 = cross(ax1, ay1, ax2, ay2, bx1, by1);
+        double d4 = cross(ax1, ay1, ax2, ay2, bx2, by2);
+        return !(d3 > 0 && d4 > 0 || d3 < 0 && d4 < 0);
+    }
+
+    /**
+     * Which side of the line from 1 to 2 the point x,y is on: positive for left, negative for right, 0 if it is on the line
+     */
+    private static double cross(double x1, double y1, double x2, double y2, double x, double y)
+    {
+        return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ *      ZOrderSort.java
+ *
+ *      Copyright 2005, 2009 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *      This is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This software is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with the software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package hulka.event;
+
+/**
+ * Sorting helper for the ShapeIndex implementations.
+ * Works on primitive slot lists so query paths don't have to allocate.
+ */
+final class ZOrderSort
+{
+    private ZOrderSort(){}
+
+    /**
+     * Sorts a list of slots into ascending z order (shell sort - no recursion, no allocation).
+     * @param slots slot list, each value indexes shapes
+     * @param count number of slots to sort
+     * @param shapes shapes indexed by slot
+     */
+    static void sort(int [] slots, int count, MouseSensetiveShape [] shapes)
+    {
+        int gap = 1;
+        while(gap < count / 3) gap = gap * 3 + 1;
+        for(; gap > 0; gap /= 3)
+        {
+            for(int i = gap; i < count; i++)
+            {
+                int slot = slots[i];
+                int zOrder = shapes[slot].getZOrder();
+                int j = i;
+                for(; j >= gap && shapes[slots[j - gap]].getZOrder() > zOrder; j -= gap) slots[j] = slots[j - gap];
+                slots[j] = slot;
+            }
+        }
+    }
+
+    /**
+     * Replaces each slot in the list with the index (see MouseSensetiveShape.getIndex()) of the shape it refers to.
+     */
+    static void toShapeIndices(int [] slots, int count, MouseSensetiveShape [] shapes)
+    {
+        for(int i = 0; i < count; i++) slots[i] = shapes[slots[i]].getIndex();
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ *      DirtyRegionList.java
+ *
+ *      Copyright 2008, 2010 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/**
+ * Change log:
+ * 2026 10 17 - Jon
+ * Created to collect areas of a JBufferedCanvas that need updating, so they can be redrawn once per frame.
+ */
+package hulka.gui;
+
+import java.awt.Rectangle;
+
+/**
+ * A list of rectangles needing to be redrawn. <br>
+ *
+ * Rectangles are merged as they are added, whenever their union is no
+ * larger than the two areas drawn separately - overlapping or adjacent
+ * rectangles become one, while two small areas far apart stay separate.
+ * The list never holds more than MAX_REGIONS rectangles; past that, the
+ * pair that wastes the least area when merged is merged.
+ */
+public class DirtyRegionList
+{
+    //Tweak this - more regions means less area redrawn, but more drawing calls
+    public static final int MAX_REGIONS = 8;
+
+    private Rectangle [] regions = new Rectangle[MAX_REGIONS + 1];
+    private int count = 0;
+
+    public DirtyRegionList()
+    {
+        for(int i = 0; i < regions.length; i++) regions[i] = new Rectangle();
+    }
+
+    /**
+     * Adds an area to the list, merging it with the areas already there where that doesn't increase the area to redraw.
+     * Empty rectangles are ignored.
+     */
+    public void add(Rectangle r)
+    {
+        add(r.x, r.y, r.width, r.height);
+    }
+
+    public void add(int x, int y, int width, int height)
+    {
+        if(width <= 0 || height <= 0) return;
+        Rectangle added = regions[count];
+        added.setBounds(x, y, width, height);
+        //Merging can make the new rectangle large enough to absorb others, so keep going until nothing changes
+        boolean merged = true;
+        while(merged)
+        {
+            merged = false;
+            for(int i = 0; i < count && !merged; i++)
+            {
+                if(getMergeWaste(regions[i], added) <= 0)
+                {
+                    added.add(regions[i]);
+                    remove(i);
+                    //The rectangle being added has moved down into the last slot
+                    added = regions[count];
+                    merged = true;
+                }
+            }
+        }
+        count++;
+        if(count > MAX_REGIONS) mergeClosest();
+    }
+
+    /**
+     * Removes entry i, keeping the Rectangle object for reuse. The entry at count (the one being added) moves down to count - 1.
+     */
+    private void remove(int i)
+    {
+        Rectangle t = regions[i];
+        regions[i] = regions[count - 1];
+        regions[count - 1] = regions[count];
+        regions[count] = t;
+        count--;
+    }
+
+    /**
+     * Merges the two rectangles whose union adds the least area.
+     */
+    private void mergeClosest()
+    {
+        int bestI = 0;
+        int bestJ = 1;
+        long bestWaste = Long.MAX_VALUE;
+        for(int i = 0; i < count; i++)
+        {
+            for(int j = i + 1; j < count; j++)
+            {
+                long waste = getMergeWaste(regions[i], regions[j]);
+                if(waste < bestWaste)
+                {
+                    bestWaste = waste;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+        }
+        regions[bestI].add(regions[bestJ]);
+        //Move the last entry into the freed place
+        Rectangle t = regions[bestJ];
+        regions[bestJ] = regions[count - 1];
+        regions[count - 1] = t;
+        count--;
+    }
+
+    /**
+     * Area of the union of a and b, less the area of a and b drawn separately.
+     */
+    private static long getMergeWaste(Rectangle a, Rectangle b)
+    {
+        long left = Math.min(a.x, b.x);
+        long top = Math.min(a.y, b.y);
+        long right = Math.max((long)a.x + a.width, (long)b.x + b.width);
+        long bottom = Math.max((long)a.y + a.height, (long)b.y + b.height);
+        return (right - left) * (bottom - top) - (long)a.width * a.height - (long)b.width * b.height;
+    }
+
+    /**
+     * Returns the number of rectangles in the list.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns a rectangle from the list. It belongs to the list, and is reused after clear.
+     */
+    public Rectangle get(int index)
+    {
+        return regions[index];
+    }
+
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    public void clear()
+    {
+        count = 0;
+    }
+}
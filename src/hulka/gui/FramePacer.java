@@ -0,0 +1,198 @@
+/**
+ *      FramePacer.java
+ *
+ *      Copyright 2008, 2010 Jonathan Hulka <jon.hulka@gmail.com>
+ *
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License, or
+ *      (at your option) any later version.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU General Public License for more details.
+ *
+ *      You should have received a copy of the GNU General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+/**
+ * Change log:
+ * 2026 10 17 - Jon
+ * Created to limit drag rendering to one update per display frame.
+ */
+package hulka.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+
+/**
+ * Paces rendering of pointer movement to the display frame rate. <br>
+ *
+ * Pointer positions are handed to post, which only records the latest
+ * one. A renderer is run with it at most once per frame, driven by a
+ * Swing timer, so the cost of a drag doesn't grow with the rate at which
+ * the mouse sends events. When nothing has been rendered for a frame,
+ * the next position is rendered straight away, so a drag never starts
+ * late. The timer stops once a frame passes with nothing to render. <br>
+ *
+ * Positions that are replaced before being rendered are counted as
+ * coalesced. Timer ticks that come more than a frame late (the event
+ * thread was busy) are counted as dropped frames. <br>
+ *
+ * Everything here runs on the event dispatch thread.
+ */
+public class FramePacer implements ActionListener
+{
+    //Tweak this - about one frame on a 60Hz display
+    public static final int DEFAULT_FRAME_INTERVAL = 16;
+
+    private Timer timer;
+    private Runnable renderer;
+    private long frameNanos;
+    private long lastTick = 0;
+    //Latest position, and whether it still has to be rendered
+    private int x;
+    private int y;
+    private boolean pending = false;
+
+    private long eventCount = 0;
+    private long coalescedCount = 0;
+    private long frameCount = 0;
+    private long droppedFrameCount = 0;
+
+    /**
+     * @param renderer run once per frame while there is a new position, it reads the position through getX and getY
+     */
+    public FramePacer(Runnable renderer)
+    {
+        this(renderer, DEFAULT_FRAME_INTERVAL);
+    }
+
+    /**
+     * @param renderer run once per frame while there is a new position, it reads the position through getX and getY
+     * @param frameInterval milliseconds per frame
+     */
+    public FramePacer(Runnable renderer, int frameInterval)
+    {
+        this.renderer = renderer;
+        frameNanos = frameInterval * 1000000L;
+        timer = new Timer(frameInterval, this);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Records a new pointer position, replacing any that hasn't been rendered yet.
+     */
+    public void post(int x, int y)
+    {
+        eventCount++;
+        if(pending) coalescedCount++;
+        this.x = x;
+        this.y = y;
+        pending = true;
+        if(!timer.isRunning())
+        {
+            //Idle - render now, and wait a frame before rendering again
+            render();
+            lastTick = 0;
+            timer.start();
+        }
+    }
+
+    /**
+     * Renders the latest position now if it hasn't been rendered, such as before the drag ends.
+     */
+    public void flush()
+    {
+        if(pending) render();
+    }
+
+    /**
+     * Stops the timer. A position that hasn't been rendered is discarded.
+     */
+    public void stop()
+    {
+        timer.stop();
+        pending = false;
+    }
+
+    public void actionPerformed(ActionEvent e)
+    {
+        long now = System.nanoTime();
+        if(lastTick != 0)
+        {
+            long late = (now - lastTick) / frameNanos - 1;
+            if(late > 0) droppedFrameCount += late;
+        }
+        lastTick = now;
+        if(pending) render();
+        else timer.stop();
+    }
+
+    private void render()
+    {
+        pending = false;
+        frameCount++;
+        renderer.run();
+    }
+
+    public int getX()
+    {
+        return x;
+    }
+
+    public int getY()
+    {
+        return y;
+    }
+
+    /**
+     * Returns the number of positions posted.
+     */
+    public long getEventCount()
+    {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of positions replaced by a later one before being rendered.
+     */
+    public long getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+
+    /**
+     * Returns the number of times the renderer has run.
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Returns the number of frames missed because the timer was held up.
+     */
+    public long getDroppedFrameCount()
+    {
+        return droppedFrameCount;
+    }
+
+    public void resetStatistics()
+    {
+        eventCount = 0;
+        coalescedCount = 0;
+        frameCount = 0;
+        droppedFrameCount = 0;
+    }
+
+    public String toString()
+    {
+        return "events: " + eventCount + ", coalesced: " + coalescedCount + ", frames: " + frameCount + ", dropped frames: " + droppedFrameCount;
+    }
+}
@@ -22,6 +22,9 @@
 
 /**
  * Change log:
+ * 2026 10 17 - Jon
+ * Added dirty regions (see addDirtyRegion and flush) and an overlay image composited over the background while flushing.
+ * Added setBackgroundImage, for switching between backgrounds without the cost of reset.
  * 2010 06 11 - Jon
  * Moved to package hulka.gui
  * Deprecated clearRect and clearAll - replaced with clear(Rect) and clear() to make more uniform with the update functions.
@@ -29,6 +32,7 @@
 package hulka.gui;
 
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.Image;
 import java.awt.Dimension;
@@ -36,6 +40,7 @@ import java.awt.Rectangle;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 public class JBufferedCanvas extends JPanel
 {
@@ -47,6 +52,17 @@ public class JBufferedCanvas extends JPanel
     private Rectangle cB=new Rectangle();
     private Dimension size=new Dimension();
 
+    //Areas to be rebuilt from the background and overlay on the next flush
+    private DirtyRegionList dirtyRegions=new DirtyRegionList();
+    private boolean flushPending=false;
+    private Runnable flushTask=new Runnable()
+    {
+        public void run(){flush();}
+    };
+    //Drawn over the background by flush, see setOverlay
+    private BufferedImage overlayImage=null;
+    private Rectangle overlayBounds=new Rectangle();
+
     public JBufferedCanvas(BufferedImage backgroundImage)
     {
         super();
@@ -76,6 +92,19 @@ public class JBufferedCanvas extends JPanel
 //        System.out.println("painting " + g.getClipBounds());      
     }
     
+    /**
+     * Switches to a different background image of the same size, leaving the offscreen image as it is.
+     * Call clear or addDirtyRegion afterwards to show it.
+     * If the new image is a different size, this does a full reset instead.
+     * @param backgroundImage the new background
+     */
+    public void setBackgroundImage(BufferedImage backgroundImage)
+    {
+        if(backgroundImage.getWidth()==size.width && backgroundImage.getHeight()==size.height)
+            this.backgroundImage = backgroundImage;
+        else reset(backgroundImage);
+    }
+
     public BufferedImage getBackgroundImage()
     {
 		return backgroundImage;
@@ -121,6 +150,68 @@ public class JBufferedCanvas extends JPanel
 		offscreenImage.getGraphics().drawImage(backgroundImage,0,0, this);
 	}
 
+	/**
+	 * Marks an area of the offscreen image to be rebuilt from the background image and the overlay.
+	 * Areas are collected (see DirtyRegionList) and rebuilt and repainted together by flush, which is
+	 * queued on the event dispatch thread the first time an area is added. Several updates to the same
+	 * area within one batch of events then cost a single copy.
+	 * This must be called on the event dispatch thread.
+	 * @param r the area to update
+	 */
+	public void addDirtyRegion(Rectangle r)
+	{
+		dirtyRegions.add(r);
+		if(!flushPending && !dirtyRegions.isEmpty())
+		{
+			flushPending=true;
+			SwingUtilities.invokeLater(flushTask);
+		}
+	}
+
+	/**
+	 * Sets an image to be drawn over the background in the areas rebuilt by flush, such as an object being dragged.
+	 * The image's previous and new areas are both marked dirty.
+	 * @param image the overlay image, or null for none. The image's upper left corner is drawn at bounds.x, bounds.y.
+	 * @param bounds position and size of the overlay on the canvas, ignored if image is null
+	 */
+	public void setOverlay(BufferedImage image, Rectangle bounds)
+	{
+		if(overlayImage!=null)addDirtyRegion(overlayBounds);
+		overlayImage=image;
+		if(image!=null)
+		{
+			overlayBounds.setBounds(bounds);
+			addDirtyRegion(overlayBounds);
+		}
+	}
+
+	/**
+	 * Rebuilds and repaints the dirty areas: one pass per area, drawing the background and then the overlay.
+	 */
+	public void flush()
+	{
+		flushPending=false;
+		int count=dirtyRegions.getCount();
+		if(count>0)
+		{
+			Graphics2D g2d=(Graphics2D)offscreenImage.getGraphics();
+			for(int i=0; i<count; i++)
+			{
+				Rectangle r=dirtyRegions.get(i);
+				g2d.setClip(r.x, r.y, r.width, r.height);
+				g2d.drawImage(backgroundImage, r.x, r.y, r.x + r.width, r.y + r.height, r.x, r.y, r.x + r.width, r.y + r.height, null);
+				if(overlayImage!=null && overlayBounds.intersects(r))
+				{
+					Rectangle o=overlayBounds;
+					g2d.drawImage(overlayImage, o.x, o.y, o.x + o.width, o.y + o.height, 0, 0, o.width, o.height, null);
+				}
+				repaint(r);
+			}
+			g2d.dispose();
+			dirtyRegions.clear();
+		}
+	}
+
 	/**
 	 * @deprecated use clear(Rectangle) instead
 	 */
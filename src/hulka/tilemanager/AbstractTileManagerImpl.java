@@ -17,6 +17,10 @@
 
 /**
  * Changelog:
+ * 2026 10 17 - Jon
+ *  - Added getTileMask(flatIndex, rotationCount), backed by an optional precomputed TileMaskCache
+ *  - getRotationTransform no longer uses shared working storage
+ *  - getRotationTransform(flatIndex, rotationCount, transform, margin) is now public, for building rotated tile images ahead of time
  * 2012 02 02 - Jon
  *  - Added support for scaling a puzzle's dimensions when loading on a different screen resolution.
  * 
@@ -26,6 +30,7 @@ import java.awt.geom.Point2D;
 import java.awt.Point;
 import java.awt.geom.Path2D;
 import java.awt.geom.AffineTransform;
+import java.awt.Shape;
 
 public abstract class AbstractTileManagerImpl implements TileManager
 {
@@ -36,10 +41,11 @@ public abstract class AbstractTileManagerImpl implements TileManager
 	 */
 	protected int [] originalIndex;
 	protected int [] rotation;
+	//Precomputed masks - null until buildMaskCache is called
+	private TileMaskCache maskCache=null;
 
 	//Temporary storage to avoid excessive heap usage
 	private Point tempIndex=new Point(), tempNeighbor=new Point();
-	protected Point2D.Double center=new Point2D.Double(), originalCenter=new Point2D.Double();
 
 	/**
 	 * Provides a means to communicate basic tileset information to the constructor.
@@ -207,16 +213,26 @@ public abstract class AbstractTileManagerImpl implements TileManager
 	 */
 	public AffineTransform getRotationTransform(int flatIndex, AffineTransform transform, int margin)
 	{
-		if(rotation[flatIndex] > 0)
+		return getRotationTransform(flatIndex,rotation[flatIndex],transform,margin);
+	}
+
+	/**
+	 * Same as getRotationTransform(flatIndex, transform, margin), for an arbitrary rotation.
+	 * This is safe to call from several threads at once.
+	 * @param rotationCount number of rotation steps
+	 */
+	public AffineTransform getRotationTransform(int flatIndex, int rotationCount, AffineTransform transform, int margin)
+	{
+		if(rotationCount > 0)
 		{
-			center = getScaledTileCenterOffset(flatIndex,center);
-			originalCenter = getScaledTileCenterOffset(originalIndex[flatIndex],originalCenter);
+			Point2D.Double center = getScaledTileCenterOffset(flatIndex,new Point2D.Double());
+			Point2D.Double originalCenter = getScaledTileCenterOffset(originalIndex[flatIndex],new Point2D.Double());
 			//Scale to adjust for stretch
 			transform.scale(1.0,descriptor.scaleFactor);
 			//center the tile for its new orientation
 			transform.translate(center.x-originalCenter.x,center.y - originalCenter.y);
 			//apply rotation around original center
-			transform.rotate(rotation[flatIndex]*rotationStep, originalCenter.x + margin, originalCenter.y + margin);
+			transform.rotate(rotationCount*rotationStep, originalCenter.x + margin, originalCenter.y + margin);
 			//Scale back to display dimensions
 			transform.scale(1.0,1.0/descriptor.scaleFactor);
 		}
@@ -224,6 +240,38 @@ public abstract class AbstractTileManagerImpl implements TileManager
 		return transform;
 	}
 
+	public Shape getTileMask(int flatIndex, int rotationCount)
+	{
+		Shape result = maskCache==null ? null : maskCache.getTileMask(flatIndex,rotationCount);
+		if(result==null)
+		{
+			//Not cached - derive it from the unrotated mask
+			Shape mask = maskCache==null ? null : maskCache.getTileMask(flatIndex,0);
+			if(mask==null) mask = createTileMask(flatIndex);
+			result = rotationCount > 0 ? getRotationTransform(flatIndex,rotationCount,new AffineTransform(),0).createTransformedShape(mask) : mask;
+		}
+		return result;
+	}
+
+	/**
+	 * Builds the unrotated mask for a tile; used to fill the mask cache.
+	 * Implementations that call buildMaskCache must make this safe to call from several threads at once.
+	 */
+	protected Shape createTileMask(int flatIndex)
+	{
+		return getTileMask(flatIndex);
+	}
+
+	/**
+	 * Cuts and caches every tile's masks. Call this once the tile shapes are final.
+	 */
+	protected void buildMaskCache()
+	{
+		TileMaskCache cache = new TileMaskCache(this);
+		cache.build();
+		maskCache = cache;
+	}
+
 	public int getBoardWidth(){return descriptor.boardWidth;}
 	public int getBoardHeight(){return descriptor.boardHeight;}
 	public int getTileCount(){return descriptor.tileCount;}
@@ -18,6 +18,9 @@
 /**
  * Changelog:
  * 
+ * 2026 10 17 - Jon
+ *  - Tile masks are cut once, in parallel, and cached (see TileMaskCache)
+ * 
  * 2012 02 23 - Jon
  * Added getOldBoardSize to allow save file dimensions to be passed out (see notes in JigsawHandler)
  * 
@@ -83,9 +86,6 @@ public class HexJigsawManager extends HexTileManager
 	private int [][] bubbleDirection=new int[3][];
 	private int [][] controlPointOffset=new int[3][];
 	
-	//Temporary storage to avoid excessive heap usage
-	private Point tempIndex=new Point();
-
 	public HexJigsawManager(int width, int height, int tilesAcross, int tilesDown)
 	{
 		//This will trigger initTileSetDescriptor
@@ -125,6 +125,7 @@ public class HexJigsawManager extends HexTileManager
 			bubbleSize,
 			bubbleDirection,
 			controlPointOffset);
+		buildMaskCache();
 	}
 	
 	//Shared by the constructors
@@ -229,7 +230,15 @@ public class HexJigsawManager extends HexTileManager
 
 	public Shape getTileMask(int flatIndex)
 	{
-		return cutter.getTileMask(getExpandedIndex(flatIndex,tempIndex));
+		return getTileMask(flatIndex,0);
+	}
+
+	/**
+	 * Cuts a tile's mask. This is called from several threads when the mask cache is built.
+	 */
+	protected Shape createTileMask(int flatIndex)
+	{
+		return cutter.getTileMask(getExpandedIndex(flatIndex,new Point()));
 	}
 
 	private void randomize()
@@ -398,6 +407,10 @@ public class HexJigsawManager extends HexTileManager
 			{
 				result=null;
 			}
+			else
+			{
+				result.buildMaskCache();
+			}
 		}
 		return result;
 	}
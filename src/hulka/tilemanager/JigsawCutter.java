@@ -18,6 +18,9 @@
 /**
  * Changelog:
  * 
+ * 2026 10 17 - Jon
+ *  - getTileMask no longer uses shared working storage, so masks can be cut on several threads at once.
+ * 
  * 2012 02 02 - Jon
  *  - Implemented scaling when loading a puzzle on a different screen resolution.
  * 
@@ -71,14 +74,6 @@ public abstract class JigsawCutter
 
 
 
-	//Temporary storage for drawing function - to avoid excessive heap usage
-	private Point2D.Double [] corners, controls;
-	//These will be the endpoints of the side being drawn
-	private Point2D.Double a=new Point2D.Double(), b=new Point2D.Double();
-
-	//Temporary storage to avoid excessive heap usage
-	private Point tempNeighbor=new Point();
-	
 	/**
 	 * @param descriptor
 	 * @param rotationOffset rotation required to bring the first 'top' edge into a horizontal position.
@@ -104,24 +99,6 @@ public abstract class JigsawCutter
 		this.edgeTileOffset=edgeTileOffset;
 
 
-		corners = new Point2D.Double[descriptor.sideCount*4];
-		controls = new Point2D.Double[descriptor.sideCount*6];
-
-		//Set up corners and controls for the edge path - there will be 4 corners (plus 1 shared) and 6 controls on each side
-		//The order is something like this:
-		//corner(shared),controls[0],controls[1],corners[0] - cubic spline from the corner of the tile to the base of the stem
-		//corners[0],controls[2],corners[1] - quadratic spline from the base of the stem to the center of the bubble
-		//corners[1],controls[3],corners[2] - quadratic spline from the center of the bubble to the base of the stem (other side)
-		//corners[2],controls[4],controls[5],corners[3] - cubic spline from the base of the stem to the corner of the tile (other side)
-		//
-		//controls[1], controls[2], controls[3], and controls[4] form a near triangle,
-		//1 and 4 being nearly centered on the tile edge between the shared corner and corners[3]
-		//and the intervening corners between the controls - this creates the bubble shape
-		for(int j=0; j<descriptor.sideCount; j++)
-		{
-			for(int i=0; i<4; i++) corners[i*descriptor.sideCount+j]=new Point2D.Double();
-			for(int i=0; i<6; i++) controls[i*descriptor.sideCount+j]=new Point2D.Double();
-		}
 		//The edges are rotated into position to simplify the corner/control point calculations, then rotated back for drawing the path
 		//These transforms handle the rotations
 		reverseMaskTransform = new AffineTransform[descriptor.sideCount/2];
@@ -300,6 +277,26 @@ public abstract class JigsawCutter
 		//Each tile 'owns' half its edges while the other half are 'owned' by neighboring tiles.
 		//Triangular tiles will require a different approach
 		int extIndex=getExtFlatIndex(tileIndex);
+
+		//Working storage is local so that masks can be cut on several threads at once
+		//Set up corners and controls for the edge path - there will be 4 corners (plus 1 shared) and 6 controls on each side
+		//The order is something like this:
+		//corner(shared),controls[0],controls[1],corners[0] - cubic spline from the corner of the tile to the base of the stem
+		//corners[0],controls[2],corners[1] - quadratic spline from the base of the stem to the center of the bubble
+		//corners[1],controls[3],corners[2] - quadratic spline from the center of the bubble to the base of the stem (other side)
+		//corners[2],controls[4],controls[5],corners[3] - cubic spline from the base of the stem to the corner of the tile (other side)
+		//
+		//controls[1], controls[2], controls[3], and controls[4] form a near triangle,
+		//1 and 4 being nearly centered on the tile edge between the shared corner and corners[3]
+		//and the intervening corners between the controls - this creates the bubble shape
+		Point2D.Double [] corners = new Point2D.Double[descriptor.sideCount*4];
+		Point2D.Double [] controls = new Point2D.Double[descriptor.sideCount*6];
+		for(int i=0; i<corners.length; i++) corners[i]=new Point2D.Double();
+		for(int i=0; i<controls.length; i++) controls[i]=new Point2D.Double();
+		//These will be the endpoints of the side being drawn
+		Point2D.Double a=new Point2D.Double(), b=new Point2D.Double();
+		Point tempNeighbor=new Point();
+
 		//Position the corners
 		for(int i = 0; i < descriptor.sideCount; i++)
 		{
@@ -18,6 +18,9 @@
 /**
  * Changelog:
  * 
+ * 2026 10 17 - Jon
+ *  - Tile masks are cut once, in parallel, and cached (see TileMaskCache)
+ * 
  * 2012 02 23 - Jon
  * Added getOldBoardSize to allow save file dimensions to be passed out (see notes in JigsawHandler)
  * 
@@ -82,9 +85,6 @@ public class SquareJigsawManager extends SquareTileManager
 	private int cornerIndexOffset[] = new int[4];
 	private Point edgeTileOffset[] = new Point[4];
 
-	//Temporary storage to avoid excessive heap usage
-	private Point tempIndex=new Point();
-
 	public SquareJigsawManager(int width, int height, int tilesAcross, int tilesDown)
 	{
 		super(width,height,tilesAcross,tilesDown);
@@ -120,6 +120,7 @@ public class SquareJigsawManager extends SquareTileManager
 			bubbleSize,
 			bubbleDirection,
 			controlPointOffset);
+		buildMaskCache();
 	}
 	
 	//Shared by the constructors
@@ -198,7 +199,15 @@ public class SquareJigsawManager extends SquareTileManager
 
 	public Shape getTileMask(int flatIndex)
 	{
-		return cutter.getTileMask(getExpandedIndex(flatIndex,tempIndex));
+		return getTileMask(flatIndex,0);
+	}
+
+	/**
+	 * Cuts a tile's mask. This is called from several threads when the mask cache is built.
+	 */
+	protected Shape createTileMask(int flatIndex)
+	{
+		return cutter.getTileMask(getExpandedIndex(flatIndex,new Point()));
 	}
 
 	private void randomize()
@@ -304,6 +313,10 @@ public class SquareJigsawManager extends SquareTileManager
 			{
 				result=null;
 			}
+			else
+			{
+				result.buildMaskCache();
+			}
 		}
 		return result;
 	}
@@ -119,8 +119,16 @@ public interface TileManager
 	/**
 	 * Returns the shape that borders the specified tile, unpositioned and unrotated.
 	 * This function is implementation-specific, since it depends on tile shape
+	 * The result may be shared, precomputed storage - it must not be modified.
 	 */
 	public Shape getTileMask(int flatIndex);
+
+	/**
+	 * Returns the shape that borders the specified tile, unpositioned and rotated by the given number of rotation steps.
+	 * The result may be shared, precomputed storage - it must not be modified.
+	 * Precomputed masks are single precision (Path2D.Float) to halve their memory; tile coordinates are in pixels, so nothing visible is lost.
+	 */
+	public Shape getTileMask(int flatIndex, int rotationCount);
 	
 	/**
 	 * @deprecated There may never be a need for this function.
@@ -159,6 +167,13 @@ public interface TileManager
 	 */
 	public AffineTransform getRotationTransform(int flatIndex, AffineTransform transform, int errMargin);
 
+	/**
+	 * Same as getRotationTransform(flatIndex, transform, errMargin), for an arbitrary number of rotation steps rather than the tile's current orientation.
+	 * This is safe to call from several threads at once.
+	 * @param rotationCount number of rotation steps
+	 */
+	public AffineTransform getRotationTransform(int flatIndex, int rotationCount, AffineTransform transform, int errMargin);
+
 	/**
 	 * Returns tile width.
 	 */
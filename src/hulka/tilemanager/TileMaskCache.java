@@ -0,0 +1,157 @@
+/**
+ *   Copyright (C) 2010 - 2012 Jonathan Hulka (jon.hulka@gmail.com)
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Changelog:
+ *
+ * 2026 10 17 - Jon
+ *  - Created
+ *  - Above maxMaskCount, each tile's most recently requested rotation is cached instead of being rebuilt on every request
+ */
+package hulka.tilemanager;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Holds the unpositioned tile masks of a tile manager, one for each tile and rotation.
+ * Cutting a jigsaw mask is expensive, so each mask is built once, in parallel, when the tile set is set up.
+ * Cached masks are shared and must not be modified.
+ * Masks are stored as Path2D.Float - half the memory of Path2D.Double, and ample precision for pixel coordinates.
+ */
+class TileMaskCache
+{
+	//Tweak this to limit memory use - above this many masks, only unrotated masks are cut up front and each tile keeps just its latest rotation
+	private static int maxMaskCount = 32768;
+
+	private AbstractTileManagerImpl manager;
+	//Indexed [rotation][tile]
+	private Shape [][] masks;
+	//Each tile's most recently requested rotation, when not all rotations are kept - null until needed
+	private RotatedMask [] rotatedMasks=null;
+
+	/**
+	 * A rotated mask with its rotation count, so both are swapped in with one write and threads never see a mismatched pair.
+	 */
+	private static class RotatedMask
+	{
+		final int rotationCount;
+		final Shape mask;
+
+		RotatedMask(int rotationCount, Shape mask)
+		{
+			this.rotationCount=rotationCount;
+			this.mask=mask;
+		}
+	}
+
+	TileMaskCache(AbstractTileManagerImpl manager)
+	{
+		this.manager=manager;
+		int tileCount=manager.getTileCount();
+		int rotationSteps=manager.getRotationSteps();
+		if(rotationSteps<1)rotationSteps=1;
+		if(rotationSteps>1 && (long)tileCount*rotationSteps>maxMaskCount)
+		{
+			rotationSteps=1;
+			rotatedMasks=new RotatedMask[tileCount];
+		}
+		masks=new Shape[rotationSteps][tileCount];
+	}
+
+	/**
+	 * Cuts all the masks, splitting the tiles between one worker per processor.
+	 */
+	void build()
+	{
+		int tileCount=masks[0].length;
+		int workerCount=Runtime.getRuntime().availableProcessors();
+		if(workerCount>tileCount)workerCount=tileCount;
+		if(workerCount<=1)
+		{
+			build(0,tileCount);
+		}
+		else
+		{
+			ExecutorService executor=Executors.newFixedThreadPool(workerCount);
+			try
+			{
+				Future<?> [] results=new Future<?>[workerCount];
+				for(int i=0; i<workerCount; i++)
+				{
+					final int from=(int)((long)tileCount*i/workerCount);
+					final int to=(int)((long)tileCount*(i+1)/workerCount);
+					results[i]=executor.submit(new Runnable()
+					{
+						public void run(){build(from,to);}
+					});
+				}
+				for(int i=0; i<workerCount; i++)
+				{
+					try
+					{
+						results[i].get();
+					}
+					catch(Exception ex)
+					{
+						//Any masks left out will be cut on request
+						ex.printStackTrace();
+					}
+				}
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+	}
+
+	private void build(int from, int to)
+	{
+		for(int i=from; i<to; i++)
+		{
+			Shape mask=new Path2D.Float(manager.createTileMask(i));
+			masks[0][i]=mask;
+			for(int r=1; r<masks.length; r++)
+			{
+				AffineTransform transform=manager.getRotationTransform(i,r,new AffineTransform(),0);
+				masks[r][i]=new Path2D.Float(mask,transform);
+			}
+		}
+	}
+
+	/**
+	 * @return the cached mask, or null if it isn't cached.
+	 */
+	Shape getTileMask(int flatIndex, int rotationCount)
+	{
+		if(rotationCount<masks.length)return masks[rotationCount][flatIndex];
+		if(rotatedMasks==null || masks[0][flatIndex]==null)return null;
+		RotatedMask rotated=rotatedMasks[flatIndex];
+		if(rotated==null || rotated.rotationCount!=rotationCount)
+		{
+			//Tiles are rotated far less often than their masks are asked for, so keep the latest rotation
+			AffineTransform transform=manager.getRotationTransform(flatIndex,rotationCount,new AffineTransform(),0);
+			rotated=new RotatedMask(rotationCount,new Path2D.Float(masks[0][flatIndex],transform));
+			rotatedMasks[flatIndex]=rotated;
+		}
+		return rotated.mask;
+	}
+}